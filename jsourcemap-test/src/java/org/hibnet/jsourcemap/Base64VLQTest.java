@@ -17,6 +17,8 @@ package org.hibnet.jsourcemap;
 
 import static org.hibnet.jsourcemap.TestUtil.assertEquals;
 
+import java.nio.charset.StandardCharsets;
+
 import org.hibnet.jsourcemap.Base64VLQ.Base64VLQResult;
 import org.junit.Test;
 
@@ -33,4 +35,23 @@ public class Base64VLQTest {
         }
 
     }
+
+    @Test
+    public void testBufferEncodingAndDecoding() throws Exception {
+        char[] chars = new char[3 + Base64VLQ.MAX_ENCODED_LENGTH];
+        byte[] bytes = new byte[3 + Base64VLQ.MAX_ENCODED_LENGTH];
+        int[] values = new int[] { (1 << 29) - 1, -(1 << 29) + 1, 1 << 20, -(1 << 20) };
+        for (int i = -5000; i < 5000 + values.length; i++) {
+            int value = i < 5000 ? i : values[i - 5000];
+            int end = Base64VLQ.encode(value, chars, 3);
+            assertEquals(Base64VLQ.encode(value, bytes, 3), end);
+            String str = new String(chars, 3, end - 3);
+            assertEquals(new String(bytes, 3, end - 3, StandardCharsets.US_ASCII), str);
+            assertEquals(Base64VLQ.encode(value), str);
+            Base64VLQResult result = Base64VLQ.decode(str, 0);
+            assertEquals(result.value, value);
+            assertEquals(result.rest, str.length());
+        }
+    }
+
 }
@@ -104,4 +104,29 @@ public class BinarySearchTest {
         assertEquals(BinarySearch.search(needle, haystack, BinarySearchTest::numberCompare, BinarySearch.Bias.LEAST_UPPER_BOUND), 0);
     };
 
+    @Test
+    public void testPrimitiveSearch() throws Exception {
+        long[] haystack = new long[] { 2, 4, 6, 8, 10, 12, 14, 16, 18, 20 };
+
+        assertEquals(BinarySearch.search(4, haystack, null), 1);
+        assertEquals(BinarySearch.search(19, haystack, null), 8);
+        assertEquals(BinarySearch.search(19, haystack, BinarySearch.Bias.LEAST_UPPER_BOUND), 9);
+        assertEquals(BinarySearch.search(30, haystack, null), 9);
+        assertEquals(BinarySearch.search(30, haystack, BinarySearch.Bias.LEAST_UPPER_BOUND), -1);
+        assertEquals(BinarySearch.search(1, haystack, null), -1);
+        assertEquals(BinarySearch.search(1, haystack, BinarySearch.Bias.LEAST_UPPER_BOUND), 0);
+        assertEquals(BinarySearch.search(1, new long[0], null), -1);
+    };
+
+    @Test
+    public void testPrimitiveSearchMultipleMatches() throws Exception {
+        long[] haystack = new long[] { 1, 1, 2, 5, 5, 5, 13, 21 };
+
+        assertEquals(BinarySearch.search(5, haystack, null), 3);
+        assertEquals(BinarySearch.search(5, haystack, BinarySearch.Bias.LEAST_UPPER_BOUND), 3);
+        assertEquals(BinarySearch.search(7, haystack, null), 3);
+        assertEquals(BinarySearch.search(1, haystack, null), 0);
+        assertEquals(BinarySearch.search(2, haystack, null), 2);
+    };
+
 }
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import static org.hibnet.jsourcemap.TestUtil.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class JsonWriterTest {
+
+    @Test
+    public void testStrings() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.raw("[");
+        writer.string("a\"b\\c\n\r\t\b\f\u0001");
+        writer.raw(",");
+        writer.string(null);
+        writer.raw(",");
+        writer.string("é€😀");
+        writer.raw("]");
+        writer.flush();
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8),
+                "[\"a\\\"b\\\\c\\n\\r\\t\\b\\f\\u0001\",null,\"é€😀\"]");
+    }
+
+    @Test
+    public void testSurrogatesSplitBetweenParts() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        char[] chars = "a😀b\ud83d".toCharArray();
+        writer.stringContent(chars, 0, 2);
+        writer.stringContent(chars, 2, 5);
+        writer.endStringContent();
+        writer.stringContent("\ude00\ud83dc", 0, 3);
+        writer.endStringContent();
+        writer.flush();
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8), "a😀b\\ud83d\\ude00\\ud83dc");
+    }
+
+    @Test
+    public void testLargeString() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        StringBuilder expected = new StringBuilder("\"");
+        for (int i = 0; i < 10000; i++) {
+            builder.append("€\"");
+            expected.append("€\\\"");
+        }
+        expected.append("\"");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out);
+        writer.string(builder);
+        writer.flush();
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8), expected.toString());
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import static org.hibnet.jsourcemap.TestUtil.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MappingListTest {
+
+    private static final List<String> SOURCES = Arrays.asList("b.js", "a.js");
+
+    private static final List<String> NAMES = Arrays.asList("y", "x");
+
+    private static String toString(MappingList list) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < list.size(); i++) {
+            builder.append(list.generatedLine(i)).append(':').append(list.generatedColumn(i)).append('=').append(list.source(i)).append(':')
+                    .append(list.originalLine(i)).append(':').append(list.originalColumn(i)).append(':').append(list.name(i)).append(' ');
+        }
+        return builder.toString().trim();
+    }
+
+    @Test
+    public void testSortingUnorderedColumns() throws Exception {
+        MappingList list = new MappingList();
+        list.add(1, 5, 0, 1, 0, -1);
+        list.add(1, 2, 0, 1, 1, -1);
+        list.add(2, 0, 0, 2, 0, -1);
+        list.add(2, 3, 0, 2, 3, -1);
+        list.add(3, 7, 0, 3, 0, -1);
+        list.add(3, 1, 0, 3, 1, -1);
+        list.add(3, 4, 0, 3, 2, -1);
+        list.sort(SOURCES, NAMES);
+        assertEquals(toString(list), "1:2=0:1:1:-1 1:5=0:1:0:-1 2:0=0:2:0:-1 2:3=0:2:3:-1 3:1=0:3:1:-1 3:4=0:3:2:-1 3:7=0:3:0:-1");
+
+        // keeps on sorting the mappings added after a sort
+        list.add(3, 2, 1, 4, 0, 0);
+        list.add(4, 0, 1, 4, 0, 0);
+        list.sort(SOURCES, NAMES);
+        assertEquals(toString(list), "1:2=0:1:1:-1 1:5=0:1:0:-1 2:0=0:2:0:-1 2:3=0:2:3:-1 3:1=0:3:1:-1 3:2=1:4:0:0 3:4=0:3:2:-1 3:7=0:3:0:-1"
+                + " 4:0=1:4:0:0");
+    }
+
+    @Test
+    public void testSortingUnorderedLines() throws Exception {
+        MappingList list = new MappingList();
+        list.add(3, 1, 0, 3, 1, -1);
+        list.add(1, 2, 0, 1, 1, -1);
+        list.add(3, 0, 0, 3, 0, -1);
+        list.add(2, 0, 0, 2, 0, -1);
+        list.add(1, 1, 0, 1, 0, -1);
+        list.sort(SOURCES, NAMES);
+        assertEquals(toString(list), "1:1=0:1:0:-1 1:2=0:1:1:-1 2:0=0:2:0:-1 3:0=0:3:0:-1 3:1=0:3:1:-1");
+
+        // lines too sparse to be bucketed
+        list = new MappingList();
+        list.add(300000, 1, 0, 3, 1, -1);
+        list.add(1, 2, 0, 1, 1, -1);
+        list.add(300000, 0, 0, 3, 0, -1);
+        list.add(1, 1, 0, 1, 0, -1);
+        list.sort(SOURCES, NAMES);
+        assertEquals(toString(list), "1:1=0:1:0:-1 1:2=0:1:1:-1 300000:0=0:3:0:-1 300000:1=0:3:1:-1");
+    }
+
+    @Test
+    public void testSortingMappingsAtTheSamePosition() throws Exception {
+        MappingList list = new MappingList();
+        list.add(1, 0, 0, 1, 0, 0);
+        list.add(1, 0, 1, 1, 0, -1);
+        list.add(1, 0, 0, 1, 0, 1);
+        // in order, so not sorted
+        list.sort(SOURCES, NAMES);
+        assertEquals(toString(list), "1:0=0:1:0:0 1:0=1:1:0:-1 1:0=0:1:0:1");
+
+        // sorted by source then name, by value
+        list.add(2, 5, 0, 2, 0, -1);
+        list.add(2, 4, 0, 2, 0, -1);
+        list.sort(SOURCES, NAMES);
+        assertEquals(toString(list), "1:0=1:1:0:-1 1:0=0:1:0:1 1:0=0:1:0:0 2:4=0:2:0:-1 2:5=0:2:0:-1");
+    }
+
+    @Test
+    public void testAddLine() throws Exception {
+        MappingList list = new MappingList();
+        list.add(1, 0, -1, 0, 0, -1);
+        int[] columns = new int[] { 9, 8, 4, 6 };
+        int[] sources = new int[] { 0, 0, 1, 1 };
+        int[] originalLines = new int[] { 0, 1, 2, 3 };
+        int[] originalColumns = new int[] { 0, 5, 6, 7 };
+        int[] names = new int[] { 0, -1, 1, -1 };
+        list.addLine(2, columns, sources, originalLines, originalColumns, names, 1, 3);
+        assertEquals(list.size(), 4);
+        list.sort(SOURCES, NAMES);
+        assertEquals(toString(list), "1:0=-1:0:0:-1 2:4=1:2:6:1 2:6=1:3:7:-1 2:8=0:1:5:-1");
+    }
+
+}
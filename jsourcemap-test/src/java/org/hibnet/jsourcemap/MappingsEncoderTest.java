@@ -0,0 +1,48 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import static org.hibnet.jsourcemap.TestUtil.assertEquals;
+
+import org.junit.Test;
+
+public class MappingsEncoderTest {
+
+    @Test
+    public void testEncoding() throws Exception {
+        MappingsEncoder encoder = new MappingsEncoder();
+        encoder.add(1, 1, 0, 2, 2, 0);
+        encoder.add(3, 3, 0, 4, 4, 0);
+        encoder.add(3, 5, -1, 0, 0, -1);
+        encoder.add(4, 0, 1, 1, 0, -1);
+        assertEquals(encoder.toString(), "CACEA;;GAEEA,E;ACHJ");
+    }
+
+    @Test
+    public void testFlushingToAnAppendable() throws Exception {
+        MappingsEncoder encoder = new MappingsEncoder();
+        StringBuilder builder = new StringBuilder();
+        MappingsEncoder flushing = new MappingsEncoder(builder);
+        for (int i = 0; i < 10000; i++) {
+            encoder.add(i / 3 + 1 + i / 1000 * 5000, i % 3 * 1000, i % 7, i + 1, i % 50, i % 2 == 0 ? i % 13 : -1);
+            flushing.add(i / 3 + 1 + i / 1000 * 5000, i % 3 * 1000, i % 7, i + 1, i % 50, i % 2 == 0 ? i % 13 : -1);
+        }
+        flushing.flush();
+        assertEquals(flushing.length(), 0);
+        assertEquals(builder.toString(), encoder.toString());
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import static org.hibnet.jsourcemap.TestUtil.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MergeIteratorTest {
+
+    private static List<String> merge(List<List<String>> lists) {
+        List<Iterator<String>> iterators = new ArrayList<>();
+        lists.forEach(list -> iterators.add(list.iterator()));
+        List<String> merged = new ArrayList<>();
+        new MergeIterator<>(iterators, (s1, s2) -> s1.charAt(0) - s2.charAt(0)).forEachRemaining(merged::add);
+        return merged;
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        List<String> merged = merge(Arrays.asList(Arrays.asList("a", "d", "e"), Arrays.asList("b", "c", "f", "g"), Arrays.asList("h")));
+        assertEquals(Util.join(merged, ","), "a,b,c,d,e,f,g,h");
+    }
+
+    @Test
+    public void testMergeIsStable() throws Exception {
+        List<String> merged = merge(Arrays.asList(Arrays.asList("a2", "b2"), Arrays.asList("a1", "b1"), Arrays.asList("a3")));
+        assertEquals(Util.join(merged, ","), "a2,a1,a3,b2,b1");
+    }
+
+    @Test
+    public void testMergeEmpty() throws Exception {
+        assertTrue(merge(Collections.emptyList()).isEmpty());
+        assertTrue(merge(Arrays.asList(Collections.emptyList(), Collections.emptyList())).isEmpty());
+        assertEquals(Util.join(merge(Arrays.asList(Collections.emptyList(), Arrays.asList("a"))), ","), "a");
+    }
+
+}
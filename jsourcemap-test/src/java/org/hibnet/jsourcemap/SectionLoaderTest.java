@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import static org.hibnet.jsourcemap.TestUtil.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SectionLoaderTest {
+
+    private static SourceMap parse(String json) {
+        // a fake parser: the content is the name of the single source
+        SourceMap map = new SourceMap();
+        map.version = 3;
+        map.sources = new ArrayList<>();
+        map.sources.add(json.trim());
+        map.mappings = "AAAA";
+        return map;
+    }
+
+    @Test
+    public void testFileSectionLoader() throws Exception {
+        Path dir = Files.createTempDirectory("jsourcemap");
+        Path file = dir.resolve("chunk.js.map");
+        try {
+            Files.write(file, "chunk.js".getBytes(StandardCharsets.UTF_8));
+            FileSectionLoader loader = new FileSectionLoader(dir, SectionLoaderTest::parse);
+
+            assertEquals(loader.load("chunk.js.map").sources.get(0), "chunk.js");
+            assertEquals(loader.load(file.toUri().toString()).sources.get(0), "chunk.js");
+            try {
+                loader.load("missing.js.map");
+                fail("expecting an exception");
+            } catch (IOException e) {
+                // ok
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testCachingSectionLoader() throws Exception {
+        List<String> loaded = new ArrayList<>();
+        CachingSectionLoader loader = new CachingSectionLoader(url -> {
+            loaded.add(url);
+            return parse(url);
+        });
+
+        SourceMap map = loader.load("a.js");
+        assertTrue(loader.load("a.js") == map);
+        loader.load("b.js");
+        assertEquals(Util.join(loaded, ","), "a.js,b.js");
+
+        loader.clear();
+        loader.load("a.js");
+        assertEquals(Util.join(loaded, ","), "a.js,b.js,a.js");
+    }
+
+}
@@ -21,9 +21,15 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import org.hibnet.jsourcemap.SourceMapConsumer.Order;
 import org.junit.Test;
@@ -691,6 +697,21 @@ public class SourceMapConsumerTest {
         }
     }
 
+    @Test
+    public void testLookupsBeyondSmallIntegers() throws Exception {
+        SourceMapGenerator generator = new SourceMapGenerator("min.js", null);
+        for (int i = 0; i < 300; i++) {
+            generator.addMapping(new Mapping(new Position(i + 1, 0), new Position(i + 1, 0), "s" + i + ".js"));
+        }
+        SourceMapConsumer map = SourceMapConsumer.create(generator.toJSON());
+
+        OriginalPosition original = map.originalPositionFor(200, 4, null);
+        assertEquals(original.source, "s199.js");
+        assertEquals(original.line.intValue(), 200);
+        GeneratedPosition generated = map.generatedPositionFor("s250.js", 251, 0, null);
+        assertEquals(generated.line.intValue(), 251);
+    }
+
     @Test
     public void testGithubIssue_64() throws Exception {
         SourceMap sourceMap = new SourceMap();
@@ -856,4 +877,245 @@ public class SourceMapConsumerTest {
         testSourceMap.sources.stream().forEach(s -> assertNotNull(consumer.sourceContentFor(s)));
     };
 
+    private static Section section(int line, int column, SourceMap map) {
+        Section section = new Section();
+        section.offset = new Position(line, column);
+        section.map = map;
+        return section;
+    }
+
+    private static SourceMap sectionMap(String source, String mappings) {
+        SourceMap map = new SourceMap();
+        map.version = 3;
+        map.sources = Arrays.asList(source);
+        map.names = Collections.emptyList();
+        map.mappings = mappings;
+        return map;
+    }
+
+    @Test
+    public void testIndexedSourceMapSectionsAreCreatedLazily() throws Exception {
+        SourceMap brokenMap = sectionMap("two.js", "AAAA");
+        brokenMap.version = 2;
+
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.version = 3;
+        sourceMap.sections = Arrays.asList(section(0, 0, sectionMap("one.js", "AAAA")), section(10, 0, brokenMap));
+
+        // the broken section is not parsed until a lookup lands in it
+        SourceMapConsumer map = SourceMapConsumer.create(sourceMap);
+        OriginalPosition pos = map.originalPositionFor(1, 1, null);
+        assertEquals(pos.source, "one.js");
+
+        try {
+            map.originalPositionFor(11, 1, null);
+            fail("expecting an exception");
+        } catch (RuntimeException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void testIndexedSourceMapLookupAcrossSections() throws Exception {
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.version = 3;
+        sourceMap.sections = Arrays.asList(section(0, 10, sectionMap("one.js", "AAAA;AAAA")), section(2, 0, sectionMap("two.js", "AAAA")),
+                section(4, 0, sectionMap("three.js", "AAAA")));
+        SourceMapConsumer map = SourceMapConsumer.create(sourceMap);
+
+        // before the first section
+        OriginalPosition pos = map.originalPositionFor(1, 5, null);
+        assertNull(pos.source);
+        assertNull(pos.line);
+
+        // jump back and forth between the sections
+        assertEquals(map.originalPositionFor(5, 1, null).source, "three.js");
+        assertEquals(map.originalPositionFor(1, 11, null).source, "one.js");
+        assertEquals(map.originalPositionFor(2, 1, null).source, "one.js");
+        assertEquals(map.originalPositionFor(3, 1, null).source, "two.js");
+        assertEquals(map.originalPositionFor(3, 1, null).source, "two.js");
+        assertEquals(map.originalPositionFor(5, 20, null).source, "three.js");
+    }
+
+    @Test
+    public void testIndexedSourceMapGeneratedPositionForSourceInSeveralSections() throws Exception {
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.version = 3;
+        sourceMap.sections = Arrays.asList(section(0, 0, sectionMap("a.js", "AASA")), section(5, 0, sectionMap("b.js", "AAAA")),
+                section(7, 0, sectionMap("a.js", "AAAA")));
+        SourceMapConsumer map = SourceMapConsumer.create(sourceMap);
+
+        assertEquals(Util.join(map.sources(), ","), "a.js,b.js,a.js");
+
+        // the first section has a.js but nothing for line 1
+        GeneratedPosition pos = map.generatedPositionFor("a.js", 1, 0, null);
+        assertEquals(pos.line.intValue(), 8);
+        assertEquals(pos.column.intValue(), 0);
+
+        pos = map.generatedPositionFor("a.js", 10, 0, null);
+        assertEquals(pos.line.intValue(), 1);
+
+        pos = map.generatedPositionFor("b.js", 1, 0, null);
+        assertEquals(pos.line.intValue(), 6);
+
+        pos = map.generatedPositionFor("c.js", 1, 0, null);
+        assertNull(pos.line);
+    }
+
+    @Test
+    public void testEachMappingForIndexedSourceMapsWithSharedSources() throws Exception {
+        SourceMap first = new SourceMap();
+        first.version = 3;
+        first.sources = Arrays.asList("b.js", "a.js");
+        first.names = Collections.emptyList();
+        first.sourceRoot = "/root";
+        first.mappings = "AAAA,CCAA,C,CDAC";
+        SourceMap second = new SourceMap();
+        second.version = 3;
+        second.sources = Arrays.asList("/root/a.js", "c.js");
+        second.names = Collections.emptyList();
+        second.mappings = "AAAA,CCAA,CDAC";
+
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.version = 3;
+        sourceMap.sections = Arrays.asList(section(0, 0, first), section(1, 0, second));
+        SourceMapConsumer map = SourceMapConsumer.create(sourceMap);
+
+        StringBuilder generated = new StringBuilder();
+        map.eachMapping().forEach(mapping -> generated.append(mapping.generated.line + ":" + mapping.generated.column + "=" + mapping.source + ":"
+                + (mapping.original.line == null ? "" : mapping.original.line + ":" + mapping.original.column) + " "));
+        assertEquals(generated.toString(), "1:0=/root/b.js:1:0 1:1=/root/a.js:1:0 1:2=null: 1:3=/root/b.js:1:1 "
+                + "2:0=/root/a.js:1:0 2:1=c.js:1:0 2:2=/root/a.js:1:1 ");
+
+        StringBuilder original = new StringBuilder();
+        map.eachMapping(Order.original).forEach(mapping -> original.append(mapping.generated.line + ":" + mapping.generated.column + "=" + mapping.source
+                + ":" + mapping.original.line + ":" + mapping.original.column + " "));
+        assertEquals(original.toString(), "1:0=/root/b.js:1:0 1:3=/root/b.js:1:1 2:0=/root/a.js:1:0 1:1=/root/a.js:1:0 2:2=/root/a.js:1:1 "
+                + "2:1=c.js:1:0 ");
+    }
+
+    @Test
+    public void testIndexedSourceMapParsedInParallel() throws Exception {
+        List<Section> sections = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sections.add(section(i * 2, i, sectionMap("s" + (i % 3) + ".js", "AAAA,CAAC;AACA,EAAE")));
+        }
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.version = 3;
+        sourceMap.sections = sections;
+
+        String expected = SourceMapConsumer.create(sourceMap).eachMapping(Order.original)
+                .map(m -> m.generated.line + ":" + m.generated.column + "=" + m.source + ":" + m.original.line + ":" + m.original.column)
+                .collect(Collectors.joining(" "));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger submitted = new AtomicInteger();
+        Executor countingExecutor = task -> {
+            submitted.incrementAndGet();
+            executor.execute(task);
+        };
+        try {
+            SourceMapConsumer map = SourceMapConsumer.create(sourceMap, countingExecutor, 3);
+            assertEquals(map.eachMapping(Order.original)
+                    .map(m -> m.generated.line + ":" + m.generated.column + "=" + m.source + ":" + m.original.line + ":" + m.original.column)
+                    .collect(Collectors.joining(" ")), expected);
+            assertEquals(submitted.get(), 3);
+
+            submitted.set(0);
+            SourceMapConsumer.create(sourceMap, countingExecutor, 3).eachMapping(Order.generated).count();
+            assertEquals(submitted.get(), 3);
+
+            SourceMap brokenMap = sectionMap("broken.js", "AAAA");
+            brokenMap.version = 2;
+            sourceMap.sections = new ArrayList<>(sections);
+            sourceMap.sections.add(section(100, 0, brokenMap));
+            try {
+                SourceMapConsumer.create(sourceMap, executor, 3).eachMapping().count();
+                fail("expecting an exception");
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().startsWith("Unsupported version"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIndexedSourceMapWithUrlSections() throws Exception {
+        List<Section> sections = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Section section = new Section();
+            section.offset = new Position(i, 0);
+            section.url = "chunk" + i + ".js.map";
+            sections.add(section);
+        }
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.version = 3;
+        sourceMap.sections = sections;
+
+        try {
+            SourceMapConsumer.create(sourceMap);
+            fail("expecting an exception");
+        } catch (RuntimeException e) {
+            // ok
+        }
+
+        List<String> loaded = new ArrayList<>();
+        SourceMapConsumer map = SourceMapConsumer.create(sourceMap, url -> {
+            loaded.add(url);
+            return sectionMap(url.replace(".map", ""), "AAAA");
+        });
+        assertTrue(loaded.isEmpty());
+
+        assertEquals(map.originalPositionFor(4, 1, null).source, "chunk3.js");
+        assertEquals(map.originalPositionFor(4, 5, null).source, "chunk3.js");
+        assertEquals(map.originalPositionFor(8, 1, null).source, "chunk7.js");
+        assertEquals(Util.join(loaded, ","), "chunk3.js.map,chunk7.js.map");
+    }
+
+    @Test
+    public void testEachMappingForIndexedSourceMapsDoesNotFlatten() throws Exception {
+        List<Section> sections = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            SourceMap map = new SourceMap();
+            map.version = 3;
+            map.sources = Arrays.asList("s" + (i % 3) + ".js", "s" + (i % 4) + ".js");
+            map.names = Arrays.asList("n" + (i % 2));
+            map.mappings = "AAAA,CCCCA,C;ADCC,EAAA";
+            sections.add(section(i * 3, i, map));
+        }
+        SourceMap sourceMap = new SourceMap();
+        sourceMap.version = 3;
+        sourceMap.sections = sections;
+        SourceMapConsumer map = SourceMapConsumer.create(sourceMap);
+
+        String generated = map.eachMapping(Order.generated).map(SourceMapConsumerTest::toString).collect(Collectors.joining(" "));
+        String original = map.eachMapping(Order.original).map(SourceMapConsumerTest::toString).collect(Collectors.joining(" "));
+        assertNull(map.__generatedMappings);
+        assertNull(map.__originalMappings);
+
+        // now flatten and compare
+        map._generatedMappings();
+        assertEquals(map.eachMapping(Order.generated).map(SourceMapConsumerTest::toString).collect(Collectors.joining(" ")), generated);
+        assertEquals(map.eachMapping(Order.original).map(SourceMapConsumerTest::toString).collect(Collectors.joining(" ")), original);
+
+        // the names of the second section are numbered in the other order, so its run of a.js is sorted again
+        SourceMap first = sectionMap("a.js", "AAAAA");
+        first.names = Arrays.asList("y");
+        SourceMap second = sectionMap("a.js", "AAAAA,AAAAC");
+        second.names = Arrays.asList("x", "y");
+        sourceMap.sections = Arrays.asList(section(0, 0, first), section(1, 0, second));
+        map = SourceMapConsumer.create(sourceMap);
+        original = map.eachMapping(Order.original).map(SourceMapConsumerTest::toString).collect(Collectors.joining(" "));
+        assertNull(map.__originalMappings);
+        assertEquals(original, "1:0=a.js:1:0:y 2:0=a.js:1:0:y 2:0=a.js:1:0:x");
+        map._generatedMappings();
+        assertEquals(map.eachMapping(Order.original).map(SourceMapConsumerTest::toString).collect(Collectors.joining(" ")), original);
+    }
+
+    private static String toString(Mapping mapping) {
+        return mapping.generated.line + ":" + mapping.generated.column + "=" + mapping.source + ":" + mapping.original.line + ":"
+                + mapping.original.column + ":" + mapping.name;
+    }
+
 }
@@ -20,8 +20,25 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -92,6 +109,29 @@ public class SourceMapGeneratorTest {
         TestUtil.assertEqualMaps(map.toJSON(), TestUtil.testMapWithSourcesContent);
     }
 
+    @Test
+    public void testFromSourceMapReusesCanonicalMappings() throws Exception {
+        SourceMapGenerator map = SourceMapGenerator.fromSourceMap(SourceMapConsumer.create(TestUtil.testMap));
+        assertEquals(map._rawMappings, TestUtil.testMap.mappings);
+        map.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "one.js"));
+        assertNull(map._rawMappings);
+
+        SourceMap unordered = new SourceMap();
+        unordered.version = 3;
+        unordered.sources = Arrays.asList("b.js", "a.js", "b.js", "unused.js");
+        unordered.names = Arrays.asList("x", "y");
+        unordered.sourcesContent = Arrays.asList("B", "A", null, "U");
+        // the second source is used first, and the third is a duplicate of the first
+        unordered.mappings = "ECACC,EDAAD;AEAA";
+        map = SourceMapGenerator.fromSourceMap(SourceMapConsumer.create(unordered));
+        assertNull(map._rawMappings);
+        SourceMap json = map.toJSON();
+        assertEquals(Util.join(json.sources, ","), "a.js,b.js");
+        assertEquals(Util.join(json.names, ","), "y,x");
+        assertEquals(json.mappings, "EAACA,ECAAC;AAAA");
+        assertEquals(Util.join(json.sourcesContent, ","), "A,B");
+    }
+
     // @Test
     // public void testApplySourceMap() throws Exception {
     // var node = new SourceNode(null, null, null, [
@@ -302,6 +342,18 @@ public class SourceMapGeneratorTest {
         TestUtil.assertEqualMaps(map.toJSON(), sourceMap);
     }
 
+    @Test
+    public void testSortingOrdersSourcesAndNamesByValue() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("test.js", null);
+        map.addMapping(new Mapping(new Position(2, 0), new Position(1, 0), "b.js", "y"));
+        map.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "b.js"));
+        map.addMapping(new Mapping(new Position(2, 0), new Position(1, 0), "a.js"));
+        map.addMapping(new Mapping(new Position(2, 0), new Position(1, 0), "b.js", "x"));
+
+        // a.js and x sort first although they were added last
+        assertEquals(map.toJSON().mappings, "AAAA;ACAA,ADAAC,AAAAD");
+    }
+
     @Test
     public void testIgnoreDuplicateMappings() throws Exception {
         // null original source location
@@ -410,6 +462,99 @@ public class SourceMapGeneratorTest {
         TestUtil.assertEqualMaps(map1.toJSON(), expectedMap.toJSON());
     }
 
+    @Test
+    public void testApplySourceMapLooksUpEachOriginalPosition() throws Exception {
+        SourceMap indexed = new SourceMap();
+        indexed.version = 3;
+        indexed.file = "min.js";
+        indexed.sections = new ArrayList<>();
+        String[] mappings = TestUtil.testMapWithSourcesContent.mappings.split(";");
+        for (int i = 0; i < 2; i++) {
+            Section section = new Section();
+            section.offset = new Position(i, 0);
+            section.map = new SourceMap();
+            section.map.version = 3;
+            section.map.sources = TestUtil.testMapWithSourcesContent.sources;
+            section.map.sourcesContent = TestUtil.testMapWithSourcesContent.sourcesContent;
+            section.map.names = TestUtil.testMapWithSourcesContent.names;
+            section.map.sourceRoot = "/the/root";
+            section.map.mappings = i == 0 ? mappings[0] : "A" + mappings[1].substring(1);
+            indexed.sections.add(section);
+        }
+
+        for (SourceMap applied : Arrays.asList(TestUtil.testMapWithSourcesContent, indexed)) {
+            SourceMapConsumer consumer = SourceMapConsumer.create(applied);
+            SourceMapGenerator map = new SourceMapGenerator("bundle.js", null);
+            SourceMapGenerator expectedMap = new SourceMapGenerator("bundle.js", null);
+            // the positions are looked up in the reverse order, some of them twice, and some are not mapped
+            int generatedLine = 1;
+            for (int line = 3; line >= 1; line--) {
+                for (int column = 40; column >= 0; column -= 3) {
+                    for (int repeat = 0; repeat < (column % 2 == 0 ? 2 : 1); repeat++) {
+                        Position generated = new Position(generatedLine++, 0);
+                        map.addMapping(new Mapping(generated, new Position(line, column), "min.js"));
+                        OriginalPosition original = consumer.originalPositionFor(line, column, null);
+                        if (original.source != null) {
+                            expectedMap.addMapping(new Mapping(generated, new Position(original.line, original.column), original.source, original.name));
+                        } else {
+                            expectedMap.addMapping(new Mapping(generated, new Position(line, column), "min.js"));
+                        }
+                    }
+                }
+            }
+            map.applySourceMap(consumer, "min.js", null);
+
+            SourceMap actual = map.toJSON();
+            SourceMap expected = expectedMap.toJSON();
+            assertEquals(actual.mappings, expected.mappings);
+            assertEquals(Util.join(actual.sources, ","), Util.join(expected.sources, ","));
+            assertEquals(Util.join(actual.names, ","), Util.join(expected.names, ","));
+        }
+    }
+
+    @Test
+    public void testApplySourceMaps() throws Exception {
+        Map<String, SourceMap> moduleMaps = new LinkedHashMap<>();
+        for (int module = 0; module < 3; module++) {
+            SourceMapGenerator moduleMap = new SourceMapGenerator("m" + module + ".js", null);
+            moduleMap.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "m" + module + ".ts"));
+            moduleMap.addMapping(new Mapping(new Position(1, 5), new Position(2, 3), "m" + module + ".ts", "f" + module));
+            moduleMap.addMapping(new Mapping(new Position(2, 0), new Position(4, 0), "shared.ts"));
+            moduleMap.setSourceContent("m" + module + ".ts", "module " + module);
+            moduleMaps.put("m" + module + ".js", moduleMap.toJSON());
+        }
+
+        SourceMapGenerator bundle = new SourceMapGenerator("bundle.js", null);
+        SourceMapGenerator expected = new SourceMapGenerator("bundle.js", null);
+        for (int line = 1; line <= 12; line++) {
+            for (int column = 0; column < 8; column += 2) {
+                // vendor.js has no source map to apply
+                String source = line % 4 == 0 ? "vendor.js" : "m" + line % 4 + ".js";
+                Mapping mapping = new Mapping(new Position(line, column), new Position(column % 3 + 1, column), source, line == 5 ? "x" : null);
+                bundle.addMapping(mapping);
+                expected.addMapping(mapping);
+            }
+        }
+        Map<String, SourceMapConsumer> consumers = new HashMap<>();
+        for (Map.Entry<String, SourceMap> entry : moduleMaps.entrySet()) {
+            consumers.put(entry.getKey(), SourceMapConsumer.create(entry.getValue()));
+            expected.applySourceMap(SourceMapConsumer.create(entry.getValue()), entry.getKey(), null);
+        }
+        bundle.applySourceMaps(consumers);
+        TestUtil.assertEqualMaps(bundle.toJSON(), expected.toJSON());
+
+        // with the source maps next to the modules
+        bundle = new SourceMapGenerator("bundle.js", null);
+        bundle.addMapping(new Mapping(new Position(1, 0), new Position(1, 6), "lib/m1.js"));
+        bundle.addMapping(new Mapping(new Position(1, 4), new Position(1, 0), "app/m2.js"));
+        bundle.applySourceMaps(source -> consumers.get(source.substring(4)), source -> source.substring(0, 3));
+        SourceMap json = bundle.toJSON();
+        assertEquals(Util.join(json.sources, ","), "lib/m1.ts,app/m2.ts");
+        assertEquals(Util.join(json.sourcesContent, ","), "module 1,module 2");
+        assertEquals(Util.join(json.names, ","), "f1");
+        assertEquals(json.mappings, "AACGA,ICDH");
+    }
+
     @Test
     public void testIssue_192() throws Exception {
         SourceMapGenerator generator = new SourceMapGenerator(null, null);
@@ -423,4 +568,498 @@ public class SourceMapGeneratorTest {
         assertEquals(n, 2, "Should not de-duplicate mappings that have the same generated positions, but different original positions.");
     }
 
+    @Test
+    public void testWriteMappings() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("test.js", null);
+        for (int i = 0; i < 20000; i++) {
+            map.addMapping(new Mapping(new Position(i / 7 + 1, (i % 7) * 13), new Position(i % 101 + 1, i % 17), "s" + (i % 5) + ".js",
+                    i % 3 == 0 ? "n" + (i % 11) : null));
+        }
+        map.addMapping(new Mapping(new Position(5000, 0)));
+        String mappings = map.toJSON().mappings;
+
+        StringWriter writer = new StringWriter();
+        map.writeMappings(writer);
+        assertEquals(writer.toString(), mappings);
+
+        StringBuilder builder = new StringBuilder();
+        map.writeMappings(builder);
+        assertEquals(builder.toString(), mappings);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.writeMappings(out);
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8), mappings);
+
+        SourceMapConsumer consumer = SourceMapConsumer.create(map.toJSON());
+        assertEquals(consumer.eachMapping().count(), 20001);
+        OriginalPosition original = consumer.originalPositionFor(100, 0, null);
+        assertEquals(original.source, "s3.js");
+        assertEquals(original.line.intValue(), 88);
+        assertEquals(original.column.intValue(), 13);
+        assertEquals(original.name, "n0");
+    }
+
+    @Test
+    public void testWriteJSON() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("min.js", "/the/root");
+        map.addMapping(new Mapping(new Position(1, 1), new Position(1, 1), "one.js", "bar"));
+        map.addMapping(new Mapping(new Position(2, 3), new Position(2, 2), "two.js"));
+        map.addMapping(new Mapping(new Position(2, 5)));
+        map.setSourceContent("one.js", "var \"\u00e9\" = '\ud83d\ude00';\n");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        map.writeJSON(out);
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8),
+                "{\"version\":3,\"sources\":[\"one.js\",\"two.js\"],\"names\":[\"bar\"],\"mappings\":\"" + map.toJSON().mappings
+                        + "\",\"file\":\"min.js\",\"sourceRoot\":\"/the/root\",\"sourcesContent\":[\"var \\\"\u00e9\\\" = '\ud83d\ude00';\\n\",null]}");
+
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        map.writeJSON(Channels.newChannel(channelOut));
+        assertEquals(new String(channelOut.toByteArray(), StandardCharsets.UTF_8), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDeferredSourceContent() throws Exception {
+        Path file = Files.createTempFile("jsourcemap", ".js");
+        try {
+            Files.write(file, "var a = \"\u00e9\";\n".getBytes(StandardCharsets.UTF_8));
+            int[] supplied = { 0 };
+            SourceMapGenerator map = new SourceMapGenerator("min.js", "/the/root");
+            map.addMapping(new Mapping(new Position(1, 1), new Position(1, 1), "one.js"));
+            map.addMapping(new Mapping(new Position(1, 5), new Position(1, 1), "two.js"));
+            map.addMapping(new Mapping(new Position(1, 9), new Position(1, 1), "three.js"));
+            map.addMapping(new Mapping(new Position(1, 13), new Position(1, 1), "four.js"));
+            map.setSourceContent("/the/root/one.js", file, StandardCharsets.UTF_8);
+            map.setDeferredSourceContent("two.js", () -> {
+                supplied[0]++;
+                return new StringBuilder("two");
+            });
+            map.setSourceContent("three.js", file, StandardCharsets.UTF_8);
+            map.setSourceContent("four.js", "four");
+            assertEquals(supplied[0], 0);
+
+            SourceMap json = map.toJSON();
+            assertEquals(Util.join(json.sourcesContent, "|"), "var a = \"\u00e9\";\n|two|var a = \"\u00e9\";\n|four");
+            assertEquals(supplied[0], 1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            map.writeJSON(out);
+            String written = new String(out.toByteArray(), StandardCharsets.UTF_8);
+            assertEquals(written.substring(written.indexOf(",\"sourcesContent\"")),
+                    ",\"sourcesContent\":[\"var a = \\\"\u00e9\\\";\\n\",\"two\",\"var a = \\\"\u00e9\\\";\\n\",\"four\"]}");
+            assertEquals(supplied[0], 2);
+
+            // the shared content of the file is still used by the other source
+            map.setSourceContent("one.js", null);
+            Files.write(file, "changed".getBytes(StandardCharsets.UTF_8));
+            assertEquals(Util.join(map.toJSON().sourcesContent, "|"), "null|two|changed|four");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testMinimizeMappings() throws Exception {
+        SourceMapGenerator map = minimizableMap();
+        SourceMapConsumer before = SourceMapConsumer.create(map.toJSON());
+        map.minimizeMappings();
+        SourceMap json = map.toJSON();
+        assertEquals(json.mappings, "CAAC,EAAE,EAAEA,C;AACA,I,CAAC;AACD");
+        assertEquals(Util.join(json.names, ","), "foo");
+        // the minimized mappings resolve any generated position as before
+        SourceMapConsumer after = SourceMapConsumer.create(json);
+        for (int line = 1; line <= 3; line++) {
+            for (int column = 0; column < 12; column++) {
+                OriginalPosition expected = before.originalPositionFor(line, column, null);
+                OriginalPosition actual = after.originalPositionFor(line, column, null);
+                assertEquals(actual.source + ":" + actual.line + ":" + actual.column + ":" + actual.name,
+                        expected.source + ":" + expected.line + ":" + expected.column + ":" + expected.name);
+            }
+        }
+
+        map = minimizableMap();
+        map.minimizeMappings(true, true);
+        json = map.toJSON();
+        assertEquals(json.mappings, "CAAC,K;AACI,I,CAAC;AACD");
+        assertEquals(json.names.size(), 0);
+    }
+
+    @Test
+    public void testIncrementalSerialization() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("incremental.js", null);
+        map.setIncrementalSerialization(true);
+        List<Mapping> added = new ArrayList<>();
+        Random random = new Random(42);
+        for (int step = 0; step < 20; step++) {
+            // appended lines, then lines before the last one, mappings out of order and at the same position
+            for (int i = 0; i < 10; i++) {
+                int line = step % 3 == 0 ? 5 * step + random.nextInt(5) + 1 : random.nextInt(5 * step + 5) + 1;
+                Position generated = new Position(line, random.nextInt(8));
+                Mapping mapping;
+                if (random.nextInt(5) == 0) {
+                    mapping = new Mapping(generated);
+                } else if (random.nextBoolean()) {
+                    mapping = new Mapping(generated, new Position(random.nextInt(20) + 1, random.nextInt(10)), "s" + random.nextInt(3) + ".js");
+                } else {
+                    mapping = new Mapping(generated, new Position(random.nextInt(20) + 1, random.nextInt(10)), "s" + random.nextInt(3) + ".js",
+                            "n" + random.nextInt(4));
+                }
+                map.addMapping(mapping);
+                added.add(mapping);
+            }
+            SourceMapGenerator expected = new SourceMapGenerator("incremental.js", null);
+            for (Mapping mapping : added) {
+                expected.addMapping(mapping);
+            }
+            String mappings = expected.toJSON().mappings;
+            assertEquals(map.toJSON().mappings, mappings);
+            StringBuilder written = new StringBuilder();
+            map.writeMappings(written);
+            assertEquals(written.toString(), mappings);
+        }
+
+        // the minimized mappings are serialized incrementally too
+        SourceMapGenerator expected = new SourceMapGenerator("incremental.js", null);
+        for (Mapping mapping : added) {
+            expected.addMapping(mapping);
+        }
+        map.minimizeMappings();
+        expected.minimizeMappings();
+        assertEquals(map.toJSON().mappings, expected.toJSON().mappings);
+        Mapping mapping = new Mapping(new Position(3, 100), new Position(1, 1), "s0.js");
+        map.addMapping(mapping);
+        expected.addMapping(mapping);
+        assertEquals(map.toJSON().mappings, expected.toJSON().mappings);
+    }
+
+    private static SourceMapGenerator minimizableMap() {
+        SourceMapGenerator map = new SourceMapGenerator("min.js", null);
+        map.addMapping(new Mapping(new Position(1, 0)));
+        map.addMapping(new Mapping(new Position(1, 1), new Position(1, 1), "a.js"));
+        map.addMapping(new Mapping(new Position(1, 2), new Position(1, 1), "a.js"));
+        map.addMapping(new Mapping(new Position(1, 3), new Position(1, 3), "a.js"));
+        map.addMapping(new Mapping(new Position(1, 5), new Position(1, 5), "a.js", "foo"));
+        map.addMapping(new Mapping(new Position(1, 6)));
+        map.addMapping(new Mapping(new Position(1, 7)));
+        map.addMapping(new Mapping(new Position(2, 0), new Position(2, 5), "a.js"));
+        map.addMapping(new Mapping(new Position(2, 4)));
+        map.addMapping(new Mapping(new Position(2, 5), new Position(2, 6), "a.js"));
+        map.addMapping(new Mapping(new Position(2, 6), new Position(2, 6), "a.js"));
+        map.addMapping(new Mapping(new Position(3, 0), new Position(3, 5), "a.js"));
+        return map;
+    }
+
+    @Test
+    public void testIndexedSourceMapGenerator() throws Exception {
+        SourceMapGenerator first = new SourceMapGenerator("one.min.js", null);
+        first.addMapping(new Mapping(new Position(1, 2), new Position(3, 4), "one.js", "foo"));
+        first.setSourceContent("one.js", "var foo;");
+        SourceMap second = new SourceMap();
+        second.version = 3;
+        second.sources = Arrays.asList("two.js");
+        second.names = Collections.emptyList();
+        second.mappings = "AAAA;AACA";
+
+        IndexedSourceMapGenerator generator = new IndexedSourceMapGenerator("min.js");
+        generator.addSection(0, 0, first);
+        generator.addSection(1, 10, second);
+        try {
+            generator.addSection(1, 5, second);
+            fail("expecting an exception");
+        } catch (RuntimeException e) {
+            // ok
+        }
+
+        SourceMap json = generator.toJSON();
+        assertEquals(json.sections.size(), 2);
+        assertEquals(json.sections.get(1).map.mappings, "AAAA;AACA");
+        SourceMapConsumer consumer = SourceMapConsumer.create(json);
+        OriginalPosition original = consumer.originalPositionFor(1, 2, null);
+        assertEquals(original.source + ":" + original.line + ":" + original.column + ":" + original.name, "one.js:3:4:foo");
+        original = consumer.originalPositionFor(2, 15, null);
+        assertEquals(original.source + ":" + original.line + ":" + original.column, "two.js:1:0");
+        original = consumer.originalPositionFor(3, 0, null);
+        assertEquals(original.source + ":" + original.line + ":" + original.column, "two.js:2:0");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        generator.writeJSON(out);
+        assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8),
+                "{\"version\":3,\"file\":\"min.js\",\"sections\":["
+                        + "{\"offset\":{\"line\":0,\"column\":0},\"map\":{\"version\":3,\"sources\":[\"one.js\"],\"names\":[\"foo\"],"
+                        + "\"mappings\":\"EAEIA\",\"file\":\"one.min.js\",\"sourcesContent\":[\"var foo;\"]}},"
+                        + "{\"offset\":{\"line\":1,\"column\":10},\"map\":{\"version\":3,\"sources\":[\"two.js\"],\"names\":[],"
+                        + "\"mappings\":\"AAAA;AACA\"}}]}");
+    }
+
+    @Test
+    public void testWriteMappingsPropagatesIOException() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("test.js", null);
+        map.addMapping(new Mapping(new Position(1, 1), new Position(2, 2), "a.js", "foo"));
+        try {
+            map.writeMappings(new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("closed");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals(e.getMessage(), "closed");
+        }
+    }
+
+    @Test
+    public void testStreamingSourceMapGenerator() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("test.js", "/the/root");
+        StreamingSourceMapGenerator streaming = new StreamingSourceMapGenerator("test.js", "/the/root");
+        StringWriter writer = new StringWriter();
+        StreamingSourceMapGenerator streamingToWriter = new StreamingSourceMapGenerator("test.js", "/the/root", writer);
+        for (int i = 0; i < 5000; i++) {
+            Mapping mapping;
+            if (i % 9 == 0) {
+                mapping = new Mapping(new Position(i / 4 + 1, (i % 4) * 10));
+            } else if (i % 11 == 0) {
+                // the name of a mapping without source is not serialized, but it is still registered
+                mapping = new Mapping(new Position(i / 4 + 1, (i % 4) * 10), null, null, "unmapped" + (i % 3));
+            } else {
+                mapping = new Mapping(new Position(i / 4 + 1, (i % 4) * 10), new Position(i % 31 + 1, i % 7), "s" + (i % 3) + ".js",
+                        i % 2 == 0 ? "n" + (i % 5) : null);
+            }
+            map.addMapping(mapping);
+            streaming.addMapping(mapping);
+            streamingToWriter.addMapping(mapping);
+            if (i % 10 == 0) {
+                // repeated mappings are ignored
+                streaming.addMapping(mapping);
+                streamingToWriter.addMapping(mapping);
+            }
+        }
+        map.setSourceContent("s1.js", "content");
+        streaming.setSourceContent("s1.js", "content");
+
+        SourceMap expected = map.toJSON();
+        TestUtil.assertEqualMaps(streaming.toJSON(), expected);
+        assertEquals(Util.join(streaming.toJSON().names, ","), Util.join(expected.names, ","));
+        StringBuilder builder = new StringBuilder();
+        streaming.writeMappings(builder);
+        assertEquals(builder.toString(), expected.mappings);
+
+        SourceMap streamed = streamingToWriter.toJSON();
+        assertNull(streamed.mappings);
+        assertEquals(writer.toString(), expected.mappings);
+        assertEquals(Util.join(streamed.sources, ","), Util.join(expected.sources, ","));
+        assertEquals(Util.join(streamed.names, ","), Util.join(expected.names, ","));
+    }
+
+    @Test
+    public void testStreamingSourceMapGeneratorRejectsUnorderedMappings() throws Exception {
+        StreamingSourceMapGenerator map = new StreamingSourceMapGenerator("test.js", null);
+        map.addMapping(new Mapping(new Position(2, 5), new Position(1, 1), "a.js"));
+        map.addMapping(new Mapping(new Position(2, 5), new Position(3, 1), "a.js"));
+        try {
+            map.addMapping(new Mapping(new Position(2, 4), new Position(1, 1), "a.js"));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            map.addMapping(new Mapping(new Position(1, 8), new Position(1, 1), "b.js", "rejected"));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            map.applySourceMap(SourceMapConsumer.create(TestUtil.testMap), "a.js", null);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            map.setIncrementalSerialization(true);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        SourceMap json = map.toJSON();
+        assertEquals(json.mappings, ";KAAC,AAEA");
+        // the rejected mapping registered neither its source nor its name
+        assertEquals(Util.join(json.sources, ","), "a.js");
+        assertEquals(json.names.size(), 0);
+    }
+
+    @Test
+    public void testAddMappings() throws Exception {
+        SourceMapGenerator expected = new SourceMapGenerator("test.js", null);
+        SourceMapGenerator map = new SourceMapGenerator("test.js", null);
+        StreamingSourceMapGenerator streaming = new StreamingSourceMapGenerator("test.js", null);
+
+        int count = 1000;
+        int[] generatedLines = new int[count];
+        int[] generatedColumns = new int[count];
+        int[] sources = new int[count];
+        int[] originalLines = new int[count];
+        int[] originalColumns = new int[count];
+        int[] names = new int[count];
+        for (int i = 0; i < count; i++) {
+            generatedLines[i] = i / 10 + 1;
+            generatedColumns[i] = (i % 10) * 3;
+            originalLines[i] = i % 23 + 1;
+            originalColumns[i] = i % 9;
+            if (i % 13 == 0) {
+                expected.addMapping(new Mapping(new Position(generatedLines[i], generatedColumns[i])));
+                sources[i] = -1;
+                names[i] = -1;
+            } else {
+                String source = "s" + (i % 4) + ".js";
+                String name = i % 3 == 0 ? "n" + (i % 7) : null;
+                expected.addMapping(new Mapping(new Position(generatedLines[i], generatedColumns[i]), new Position(originalLines[i],
+                        originalColumns[i]), source, name));
+                sources[i] = map.addSource(source);
+                assertEquals(streaming.addSource(source), sources[i]);
+                names[i] = name != null ? map.addName(name) : -1;
+                if (name != null) {
+                    assertEquals(streaming.addName(name), names[i]);
+                }
+            }
+        }
+        map.addMappings(generatedLines, generatedColumns, sources, originalLines, originalColumns, names, 0, 400);
+        map.addMappings(generatedLines, generatedColumns, sources, originalLines, originalColumns, names, 400, 600);
+        streaming.addMappings(generatedLines, generatedColumns, sources, originalLines, originalColumns, names, 0, count);
+
+        TestUtil.assertEqualMaps(map.toJSON(), expected.toJSON());
+        TestUtil.assertEqualMaps(streaming.toJSON(), expected.toJSON());
+    }
+
+    @Test
+    public void testAddMappingsWithoutSource() throws Exception {
+        SourceMapGenerator expected = new SourceMapGenerator("test.js", null);
+        expected.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "a.js"));
+        expected.addMapping(new Mapping(new Position(2, 1)));
+        expected.addMapping(new Mapping(new Position(2, 1)));
+        expected.addMapping(new Mapping(new Position(2, 4), new Position(2, 0), "a.js"));
+
+        // the original position of a mapping without source is ignored, so the duplicated mapping is still removed
+        int[] generatedLines = { 1, 2, 2, 2 };
+        int[] generatedColumns = { 0, 1, 1, 4 };
+        int[] originalLines = { 1, 7, 3, 2 };
+        int[] originalColumns = { 0, 5, 9, 0 };
+        int[] names = { -1, -1, -1, -1 };
+        SourceMapGenerator map = new SourceMapGenerator("test.js", null);
+        int source = map.addSource("a.js");
+        map.addMappings(generatedLines, generatedColumns, new int[] { source, -1, -1, source }, originalLines, originalColumns, names, 0, 4);
+        TestUtil.assertEqualMaps(map.toJSON(), expected.toJSON());
+
+        ConcurrentSourceMapGenerator concurrent = new ConcurrentSourceMapGenerator("test.js", null);
+        source = concurrent.addSource("a.js");
+        concurrent.addMappings(generatedLines, generatedColumns, new int[] { source, -1, -1, source }, originalLines, originalColumns, names, 0,
+                4);
+        TestUtil.assertEqualMaps(concurrent.toJSON(), expected.toJSON());
+    }
+
+    @Test
+    public void testAddMappingsRejectsUnknownIds() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("test.js", null);
+        int source = map.addSource("a.js");
+        assertEquals(map.addSource("a.js"), source);
+        try {
+            map.addMappings(new int[] { 1 }, new int[] { 0 }, new int[] { source + 1 }, new int[] { 1 }, new int[] { 0 }, new int[] { -1 }, 0, 1);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        try {
+            map.addMappings(new int[] { 1 }, new int[] { 0 }, new int[] { source }, new int[] { 1 }, new int[] { 0 }, new int[] { 0 }, 0, 1);
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentSourceMapGenerator() throws Exception {
+        SourceMapGenerator expected = new SourceMapGenerator("test.js", null);
+        for (int line = 1; line <= 400; line++) {
+            for (int column = 0; column < 20; column += 4) {
+                expected.addMapping(concurrentMapping(line, column));
+            }
+        }
+        expected.setSourceContent("s1.js", "content");
+
+        ConcurrentSourceMapGenerator map = new ConcurrentSourceMapGenerator("test.js", null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int task = 0; task < 8; task++) {
+                int firstLine = task * 50 + 1;
+                futures.add(executor.submit(() -> {
+                    // each task adds its lines backwards
+                    for (int line = firstLine + 49; line >= firstLine; line--) {
+                        for (int column = 16; column >= 0; column -= 4) {
+                            map.addMapping(concurrentMapping(line, column));
+                        }
+                    }
+                }));
+            }
+            map.setSourceContent("s1.js", "content");
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        TestUtil.assertEqualMaps(map.toJSON(), expected.toJSON());
+
+        // mappings can be added after a merge
+        expected.addMapping(new Mapping(new Position(401, 0), new Position(1, 0), "other.js", "other"));
+        int source = map.addSource("other.js");
+        int name = map.addName("other");
+        map.addMappings(new int[] { 401 }, new int[] { 0 }, new int[] { source }, new int[] { 1 }, new int[] { 0 }, new int[] { name }, 0, 1);
+        TestUtil.assertEqualMaps(map.toJSON(), expected.toJSON());
+    }
+
+    private static Mapping concurrentMapping(int line, int column) {
+        if (column == 8) {
+            return new Mapping(new Position(line, column));
+        }
+        return new Mapping(new Position(line, column), new Position((line * 7 + column) % 31 + 1, column), "s" + ((line + column) % 5) + ".js",
+                column == 4 ? "n" + (line % 9) : null);
+    }
+
+    @Test
+    public void testParallelSerialization() throws Exception {
+        SourceMapGenerator map = new SourceMapGenerator("test.js", null);
+        for (int i = 0; i < 200000; i++) {
+            // a few long lines, and many short ones
+            int line = i < 60000 ? i / 20000 + 1 : i / 7;
+            if (i % 11 == 0) {
+                map.addMapping(new Mapping(new Position(line, i % 20000)));
+            } else {
+                map.addMapping(new Mapping(new Position(line, i % 20000), new Position(i % 1009 + 1, i % 37), "s" + (i % 13) + ".js",
+                        i % 5 == 0 ? "n" + (i % 17) : null));
+            }
+        }
+        SourceMap expected = map.toJSON();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TestUtil.assertEqualMaps(map.toJSON(executor, 4), expected);
+            TestUtil.assertEqualMaps(map.toJSON(executor, 1), expected);
+            TestUtil.assertEqualMaps(map.toJSON(null, 4), expected);
+
+            StringBuilder builder = new StringBuilder();
+            map.writeMappings(builder, executor, 3);
+            assertEquals(builder.toString(), expected.mappings);
+
+            // a single line can't be split in chunks
+            SourceMapGenerator minified = new SourceMapGenerator("test.min.js", null);
+            for (int i = 0; i < 100000; i++) {
+                minified.addMapping(new Mapping(new Position(1, i), new Position(i % 1009 + 1, i % 37), "s" + (i % 13) + ".js"));
+            }
+            TestUtil.assertEqualMaps(minified.toJSON(executor, 4), minified.toJSON());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,222 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import static org.hibnet.jsourcemap.TestUtil.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+public class SourceMapsTest {
+
+    @Test
+    public void testCompose() throws Exception {
+        // app.ts -> app.js, then bundled with lib.js in bundle.js, then minified in bundle.min.js
+        SourceMapGenerator transpiled = new SourceMapGenerator("app.js", null);
+        transpiled.addMapping(new Mapping(new Position(1, 0), new Position(2, 4), "app.ts", "main"));
+        transpiled.addMapping(new Mapping(new Position(2, 2), new Position(3, 6), "app.ts"));
+        transpiled.setSourceContent("app.ts", "// app");
+
+        SourceMapGenerator bundled = new SourceMapGenerator("bundle.js", null);
+        bundled.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "lib.js"));
+        bundled.addMapping(new Mapping(new Position(5, 0), new Position(1, 0), "app.js"));
+        bundled.addMapping(new Mapping(new Position(6, 2), new Position(2, 2), "app.js", "run"));
+        bundled.addMapping(new Mapping(new Position(7, 0), new Position(9, 0), "app.js"));
+
+        SourceMapGenerator minified = new SourceMapGenerator("bundle.min.js", null);
+        minified.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "bundle.js"));
+        minified.addMapping(new Mapping(new Position(1, 10), new Position(5, 0), "bundle.js", "m"));
+        minified.addMapping(new Mapping(new Position(1, 20), new Position(6, 4), "bundle.js"));
+        minified.addMapping(new Mapping(new Position(1, 30), new Position(7, 0), "bundle.js"));
+        minified.addMapping(new Mapping(new Position(1, 40)));
+
+        List<SourceMap> stages = Arrays.asList(transpiled.toJSON(), bundled.toJSON(), minified.toJSON());
+        SourceMap composed = SourceMaps.compose(consumers(stages)).toJSON();
+
+        SourceMapGenerator expected = new SourceMapGenerator("bundle.min.js", null);
+        expected.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "lib.js"));
+        expected.addMapping(new Mapping(new Position(1, 10), new Position(2, 4), "app.ts", "main"));
+        expected.addMapping(new Mapping(new Position(1, 20), new Position(3, 6), "app.ts", "run"));
+        // app.js has no mapping on its line 9
+        expected.addMapping(new Mapping(new Position(1, 30), new Position(9, 0), "app.js"));
+        expected.addMapping(new Mapping(new Position(1, 40)));
+        expected.setSourceContent("app.ts", "// app");
+        TestUtil.assertEqualMaps(composed, expected.toJSON());
+        assertEquals(Util.join(composed.sourcesContent, ","), "null,// app,null");
+
+        // the same as chaining applySourceMap
+        List<SourceMapConsumer> consumers = consumers(stages);
+        SourceMapGenerator chained = SourceMapGenerator.fromSourceMap(consumers.get(2));
+        chained.applySourceMap(consumers.get(1), null, null);
+        chained.applySourceMap(consumers.get(0), null, null);
+        TestUtil.assertEqualMaps(composed, chained.toJSON());
+    }
+
+    @Test
+    public void testComposeInParallel() throws Exception {
+        SourceMapGenerator transpiled = new SourceMapGenerator("app.js", "/src");
+        for (int line = 1; line <= 1000; line++) {
+            transpiled.addMapping(new Mapping(new Position(line, 0), new Position(line, 0), "app" + line % 7 + ".ts"));
+            transpiled.addMapping(new Mapping(new Position(line, 10), new Position(line, 4), "app" + line % 7 + ".ts", "n" + line % 11));
+        }
+        SourceMapGenerator minified = new SourceMapGenerator("app.min.js", null);
+        for (int i = 0; i < 100000; i++) {
+            minified.addMapping(new Mapping(new Position(i / 20 + 1, i % 20 * 5), new Position(i % 1003 + 1, i % 17), i % 9 == 0 ? "other.js"
+                    : "app.js"));
+        }
+        List<SourceMap> stages = Arrays.asList(transpiled.toJSON(), minified.toJSON());
+        SourceMap expected = SourceMaps.compose(consumers(stages)).toJSON();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            TestUtil.assertEqualMaps(SourceMaps.compose(consumers(stages), executor, 4).toJSON(), expected);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testComposeRequiresTheFileOfTheStages() throws Exception {
+        SourceMapGenerator first = new SourceMapGenerator(null, null);
+        first.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "a.ts"));
+        SourceMapGenerator second = new SourceMapGenerator("b.js", null);
+        second.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "a.js"));
+        try {
+            SourceMaps.compose(consumers(Arrays.asList(first.toJSON(), second.toJSON())));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcat() throws Exception {
+        SourceMapGenerator lib = new SourceMapGenerator("lib.js", null);
+        lib.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "lib.ts", "lib"));
+        lib.addMapping(new Mapping(new Position(1, 8), new Position(1, 4), "shared.ts"));
+        lib.addMapping(new Mapping(new Position(2, 2), new Position(3, 2), "lib.ts", "run"));
+        lib.setSourceContent("shared.ts", "// shared");
+
+        SourceMapGenerator app = new SourceMapGenerator("app.js", "/src");
+        app.addMapping(new Mapping(new Position(1, 0), new Position(5, 0), "/src/shared.ts", "run"));
+        app.addMapping(new Mapping(new Position(1, 6), new Position(2, 2), "app.ts", "app"));
+        app.addMapping(new Mapping(new Position(1, 9)));
+        app.addMapping(new Mapping(new Position(3, 1), new Position(7, 3), "app.ts"));
+        app.setSourceContent("app.ts", "// app");
+
+        List<Section> sections = new ArrayList<>();
+        sections.add(section(0, 0, lib.toJSON()));
+        // app.js starts on the second line of lib.js
+        sections.add(section(1, 5, app.toJSON()));
+        SourceMap concatenated = SourceMaps.concat("bundle.js", sections);
+
+        SourceMapGenerator expected = new SourceMapGenerator("bundle.js", null);
+        expected.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "lib.ts", "lib"));
+        expected.addMapping(new Mapping(new Position(1, 8), new Position(1, 4), "shared.ts"));
+        expected.addMapping(new Mapping(new Position(2, 2), new Position(3, 2), "lib.ts", "run"));
+        expected.addMapping(new Mapping(new Position(2, 5), new Position(5, 0), "/src/shared.ts", "run"));
+        expected.addMapping(new Mapping(new Position(2, 11), new Position(2, 2), "/src/app.ts", "app"));
+        expected.addMapping(new Mapping(new Position(2, 14)));
+        expected.addMapping(new Mapping(new Position(4, 1), new Position(7, 3), "/src/app.ts"));
+        expected.setSourceContent("shared.ts", "// shared");
+        expected.setSourceContent("/src/app.ts", "// app");
+        TestUtil.assertEqualMaps(concatenated, expected.toJSON());
+        assertEquals(Util.join(concatenated.sourcesContent, ","), "null,// shared,null,// app");
+    }
+
+    @Test
+    public void testConcatCopiesTheUnchangedSegments() throws Exception {
+        SourceMapGenerator first = new SourceMapGenerator("a.js", null);
+        SourceMapGenerator second = new SourceMapGenerator("b.js", null);
+        for (int line = 1; line <= 50; line++) {
+            first.addMapping(new Mapping(new Position(line, 2), new Position(line, 4), "a.ts", "n" + line % 3));
+            second.addMapping(new Mapping(new Position(line, 2), new Position(line * 2, 4), "b.ts", "m" + line % 5));
+        }
+        SourceMap a = first.toJSON();
+        SourceMap b = second.toJSON();
+        SourceMap concatenated = SourceMaps.concat("ab.js", Arrays.asList(section(0, 0, a), section(50, 0, b)));
+
+        // only the first segment of b is encoded again
+        String mappings = concatenated.mappings;
+        assertEquals(mappings.substring(0, a.mappings.length()), a.mappings);
+        String tail = b.mappings.substring(b.mappings.indexOf(';'));
+        assertEquals(mappings.substring(mappings.length() - tail.length()), tail);
+
+        SourceMapGenerator expected = new SourceMapGenerator("ab.js", null);
+        for (int line = 1; line <= 50; line++) {
+            expected.addMapping(new Mapping(new Position(line, 2), new Position(line, 4), "a.ts", "n" + line % 3));
+        }
+        for (int line = 1; line <= 50; line++) {
+            expected.addMapping(new Mapping(new Position(line + 50, 2), new Position(line * 2, 4), "b.ts", "m" + line % 5));
+        }
+        TestUtil.assertEqualMaps(concatenated, expected.toJSON());
+    }
+
+    @Test
+    public void testConcatRejectsInvalidSections() throws Exception {
+        SourceMapGenerator generator = new SourceMapGenerator("a.js", null);
+        generator.addMapping(new Mapping(new Position(1, 0), new Position(1, 0), "a.ts"));
+        generator.addMapping(new Mapping(new Position(2, 10), new Position(2, 0), "a.ts"));
+        SourceMap map = generator.toJSON();
+
+        // unordered offsets
+        try {
+            SourceMaps.concat(null, Arrays.asList(section(2, 0, map), section(1, 0, map)));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        // a section starting before the last mapping of the previous one
+        try {
+            SourceMaps.concat(null, Arrays.asList(section(0, 0, map), section(1, 5, map)));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+        // an indexed source map
+        SourceMap indexed = new SourceMap();
+        indexed.version = 3;
+        indexed.sections = Arrays.asList(section(0, 0, map));
+        try {
+            SourceMaps.concat(null, Arrays.asList(section(0, 0, indexed)));
+            fail();
+        } catch (RuntimeException e) {
+            // expected
+        }
+    }
+
+    private static Section section(int aLine, int aColumn, SourceMap aMap) {
+        Section section = new Section();
+        section.offset = new Position(aLine, aColumn);
+        section.map = aMap;
+        return section;
+    }
+
+    private static List<SourceMapConsumer> consumers(List<SourceMap> aMaps) {
+        List<SourceMapConsumer> consumers = new ArrayList<>();
+        for (SourceMap map : aMaps) {
+            consumers.add(SourceMapConsumer.create(map));
+        }
+        return consumers;
+    }
+
+}
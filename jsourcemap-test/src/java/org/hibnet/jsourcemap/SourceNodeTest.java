@@ -430,6 +430,16 @@ public class SourceNodeTest {
         TestUtil.assertEqualMaps(inputMap, correctMap2);
     };
 
+    @Test
+    public void testToStringWithSourceMapDoesNotRepeatMappingsOnLongSources() throws Exception {
+        // the original positions are above the range of the cached boxed Integers
+        SourceNode node = new SourceNode(null, null, null,
+                Arrays.asList(new SourceNode(1000, 200, "a.js", "one"), new SourceNode(1000, 200, "a.js", "two"), "three"));
+        Code result = node.toStringWithSourceMap("min.js", null);
+        assertEquals(result.getCode(), "onetwothree");
+        assertEquals(result.getMap().toJSON().mappings, "AAu+BwM,M");
+    }
+
     @Test
     public void testSetSourceContentWithToStringWithSourceMap() throws Exception {
         SourceNode aNode = new SourceNode(1, 1, "a.js", "a");
@@ -19,6 +19,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
 import java.util.Arrays;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 import org.junit.Test;
@@ -230,6 +231,19 @@ public class UtilTest {
         assertEquals(Util.relative("/", "the/root/one.js"), "the/root/one.js");
     }
 
+    @Test
+    public void testRelativeTo() throws Exception {
+        String[] roots = { "/the/root", "http://the/root", "/the/root/", "", ".", "/", "the/root" };
+        String[] paths = { "/the/root/one.js", "http://the/root/one.js", "/the/rootone.js", "http://the/rootone.js", "/therootone.js",
+                "the/root/one.js", "the/one.js", "one.js" };
+        for (String root : roots) {
+            Function<String, String> relative = Util.relativeTo(root);
+            for (String path : paths) {
+                assertEquals(relative.apply(path), Util.relative(root, path));
+            }
+        }
+    }
+
     @Test
     public void testSubstr() throws Exception {
         assertEquals("", Util.substr("", 0, 0));
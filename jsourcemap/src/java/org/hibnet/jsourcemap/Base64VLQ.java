@@ -58,11 +58,32 @@ class Base64VLQ {
         return isNegative ? -shifted : shifted;
     }
 
+    // The values of this range are encoded by copying their precomputed digits, which are at most 3 as the VLQ of these values fits in 12 bits.
+    private static final int SMALL_MIN = -1024;
+
+    private static final int SMALL_MAX = 1023;
+
+    private static final int SMALL_DIGITS = 3;
+
+    private static final char[] SMALL_TABLE = new char[(SMALL_MAX - SMALL_MIN + 1) * SMALL_DIGITS];
+
+    private static final byte[] SMALL_LENGTHS = new byte[SMALL_MAX - SMALL_MIN + 1];
+
+    static {
+        char[] digits = new char[SMALL_DIGITS];
+        for (int value = SMALL_MIN; value <= SMALL_MAX; value++) {
+            int length = encodeDigits(value, digits, 0);
+            System.arraycopy(digits, 0, SMALL_TABLE, (value - SMALL_MIN) * SMALL_DIGITS, length);
+            SMALL_LENGTHS[value - SMALL_MIN] = (byte) length;
+        }
+    }
+
     /**
-     * Returns the base 64 VLQ encoded value.
+     * The maximum number of chars written by the encoding of a single value.
      */
-    static final String encode(int aValue) {
-        String encoded = "";
+    static final int MAX_ENCODED_LENGTH = 7;
+
+    private static int encodeDigits(int aValue, char[] aBuffer, int aOffset) {
         int digit;
 
         int vlq = toVLQSigned(aValue);
@@ -75,10 +96,65 @@ class Base64VLQ {
                 // continuation bit is marked.
                 digit |= VLQ_CONTINUATION_BIT;
             }
-            encoded += Base64.encode(digit);
+            aBuffer[aOffset++] = Base64.encode(digit);
         } while (vlq > 0);
 
-        return encoded;
+        return aOffset;
+    }
+
+    /**
+     * Returns the base 64 VLQ encoded value.
+     */
+    static final String encode(int aValue) {
+        char[] buffer = new char[MAX_ENCODED_LENGTH];
+        return new String(buffer, 0, encode(aValue, buffer, 0));
+    }
+
+    /**
+     * Writes the base 64 VLQ encoded value in the buffer at the given offset, and returns the offset following the written chars. The buffer must
+     * have room for {@link #MAX_ENCODED_LENGTH} chars.
+     */
+    static int encode(int aValue, char[] aBuffer, int aOffset) {
+        if (SMALL_MIN <= aValue && aValue <= SMALL_MAX) {
+            int index = aValue - SMALL_MIN;
+            int start = index * SMALL_DIGITS;
+            int length = SMALL_LENGTHS[index];
+            aBuffer[aOffset] = SMALL_TABLE[start];
+            if (length > 1) {
+                aBuffer[aOffset + 1] = SMALL_TABLE[start + 1];
+                if (length > 2) {
+                    aBuffer[aOffset + 2] = SMALL_TABLE[start + 2];
+                }
+            }
+            return aOffset + length;
+        }
+        return encodeDigits(aValue, aBuffer, aOffset);
+    }
+
+    /**
+     * Writes the base 64 VLQ encoded value as ASCII bytes in the buffer at the given offset, and returns the offset following the written bytes. The
+     * buffer must have room for {@link #MAX_ENCODED_LENGTH} bytes.
+     */
+    static int encode(int aValue, byte[] aBuffer, int aOffset) {
+        if (SMALL_MIN <= aValue && aValue <= SMALL_MAX) {
+            int index = aValue - SMALL_MIN;
+            int start = index * SMALL_DIGITS;
+            int length = SMALL_LENGTHS[index];
+            for (int i = 0; i < length; i++) {
+                aBuffer[aOffset + i] = (byte) SMALL_TABLE[start + i];
+            }
+            return aOffset + length;
+        }
+        int vlq = toVLQSigned(aValue);
+        do {
+            int digit = vlq & VLQ_BASE_MASK;
+            vlq >>>= VLQ_BASE_SHIFT;
+            if (vlq > 0) {
+                digit |= VLQ_CONTINUATION_BIT;
+            }
+            aBuffer[aOffset++] = (byte) Base64.encode(digit);
+        } while (vlq > 0);
+        return aOffset;
     }
 
     /**
@@ -112,6 +188,53 @@ class Base64VLQ {
         return new Base64VLQResult(fromVLQSigned(result), aIndex);
     }
 
+    /**
+     * Decodes the base 64 VLQ value at the given index without allocating: the value is stored in aValue[0], and the index following the value is
+     * returned.
+     */
+    static int decode(String aStr, int aIndex, int[] aValue) {
+        int strLen = aStr.length();
+        int result = 0;
+        int shift = 0;
+        boolean continuation;
+        int digit;
+
+        do {
+            if (aIndex >= strLen) {
+                throw new Error("Expected more digits in base 64 VLQ value.");
+            }
+
+            digit = Base64.decode(aStr.charAt(aIndex++));
+            if (digit == -1) {
+                throw new Error("Invalid base64 digit: " + aStr.charAt(aIndex - 1));
+            }
+
+            continuation = (digit & VLQ_CONTINUATION_BIT) != 0;
+            digit &= VLQ_BASE_MASK;
+            result = result + (digit << shift);
+            shift += VLQ_BASE_SHIFT;
+        } while (continuation);
+
+        aValue[0] = fromVLQSigned(result);
+        return aIndex;
+    }
+
+    /**
+     * Returns the number of chars of the base 64 VLQ encoded value.
+     */
+    static int encodedLength(int aValue) {
+        if (SMALL_MIN <= aValue && aValue <= SMALL_MAX) {
+            return SMALL_LENGTHS[aValue - SMALL_MIN];
+        }
+        int vlq = toVLQSigned(aValue);
+        int length = 0;
+        do {
+            length++;
+            vlq >>>= VLQ_BASE_SHIFT;
+        } while (vlq > 0);
+        return length;
+    }
+
     static final class Base64VLQResult {
         int value;
         int rest;
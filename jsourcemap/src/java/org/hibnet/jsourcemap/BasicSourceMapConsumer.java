@@ -114,34 +114,31 @@ class BasicSourceMapConsumer extends SourceMapConsumer {
      */
     public static BasicSourceMapConsumer fromSourceMap(SourceMapGenerator aSourceMap) {
         BasicSourceMapConsumer smc = new BasicSourceMapConsumer();
+        MappingList generatedMappings = aSourceMap._sortedMappings();
 
-        ArraySet<String> names = smc._names = ArraySet.fromArray(aSourceMap._names.toArray(), true);
-        ArraySet<String> sources = smc._sources = ArraySet.fromArray(aSourceMap._sources.toArray(), true);
+        smc._names = ArraySet.fromArray(aSourceMap._names.toArray(), true);
+        smc._sources = ArraySet.fromArray(aSourceMap._sources.toArray(), true);
         smc.sourceRoot = aSourceMap._sourceRoot;
         smc.sourcesContent = aSourceMap._generateSourcesContent(smc._sources.toArray(), smc.sourceRoot);
         smc.file = aSourceMap._file;
 
-        // Because we are modifying the entries (by converting string sources and
-        // names to indices into the sources and names ArraySets), we have to make
-        // a copy of the entry or else bad things happen. Shared mutable state
-        // strikes again! See github issue #191.
+        // The mappings of the generator already hold the indices of their sources
+        // and names, which are the same in the copied ArraySets.
 
-        List<Mapping> generatedMappings = new ArrayList<>(aSourceMap._mappings.toArray());
         List<ParsedMapping> destGeneratedMappings = smc.__generatedMappings = new ArrayList<>();
         List<ParsedMapping> destOriginalMappings = smc.__originalMappings = new ArrayList<>();
 
         for (int i = 0, length = generatedMappings.size(); i < length; i++) {
-            Mapping srcMapping = generatedMappings.get(i);
             ParsedMapping destMapping = new ParsedMapping();
-            destMapping.generatedLine = srcMapping.generated.line;
-            destMapping.generatedColumn = srcMapping.generated.column;
-
-            if (srcMapping.source != null) {
-                destMapping.source = sources.indexOf(srcMapping.source);
-                destMapping.originalLine = srcMapping.original.line;
-                destMapping.originalColumn = srcMapping.original.column;
-                if (srcMapping.name != null) {
-                    destMapping.name = names.indexOf(srcMapping.name);
+            destMapping.generatedLine = generatedMappings.generatedLine(i);
+            destMapping.generatedColumn = generatedMappings.generatedColumn(i);
+
+            if (generatedMappings.source(i) != -1) {
+                destMapping.source = generatedMappings.source(i);
+                destMapping.originalLine = generatedMappings.originalLine(i);
+                destMapping.originalColumn = generatedMappings.originalColumn(i);
+                if (generatedMappings.name(i) != -1) {
+                    destMapping.name = generatedMappings.name(i);
                 }
 
                 destOriginalMappings.add(destMapping);
@@ -159,9 +156,19 @@ class BasicSourceMapConsumer extends SourceMapConsumer {
      */
     int _version = 3;
 
+    // The resolved sources, lazily computed by `sources()` since joining every
+    // source with the source root is not free and callers tend to ask often.
+    private volatile List<String> __sources = null;
+
     @Override
     public List<String> sources() {
-        return this._sources.toArray().stream().map(s -> this.sourceRoot != null ? Util.join(this.sourceRoot, s) : s).collect(Collectors.toList());
+        List<String> sources = this.__sources;
+        if (sources == null) {
+            sources = Collections.unmodifiableList(
+                    this._sources.toArray().stream().map(s -> this.sourceRoot != null ? Util.join(this.sourceRoot, s) : s).collect(Collectors.toList()));
+            this.__sources = sources;
+        }
+        return sources;
     }
 
     /**
@@ -329,7 +336,7 @@ class BasicSourceMapConsumer extends SourceMapConsumer {
         if (index >= 0) {
             ParsedMapping mapping = this._generatedMappings().get(index);
 
-            if (mapping.generatedLine == needle.generatedLine)
+            if (mapping.generatedLine.equals(needle.generatedLine))
 
             {
                 Integer source = mapping.source;
@@ -352,6 +359,58 @@ class BasicSourceMapConsumer extends SourceMapConsumer {
         return new OriginalPosition();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The generated mappings are walked once along the positions, each position being resolved by the first mapping at the greatest generated
+     * position which is not after it, as the binary search of originalPositionFor does.
+     */
+    @Override
+    OriginalPosition[] _originalPositionsFor(int[] aLines, int[] aColumns, int aLength) {
+        List<ParsedMapping> mappings = this._generatedMappings();
+        OriginalPosition[] positions = new OriginalPosition[aLength];
+        // the sources are resolved against the source root once each
+        String[] sources = new String[this._sources.size()];
+        int next = 0;
+        int found = -1;
+        for (int i = 0; i < aLength; i++) {
+            int line = aLines[i];
+            int column = aColumns[i];
+            while (next < mappings.size()) {
+                ParsedMapping mapping = mappings.get(next);
+                int generatedLine = mapping.generatedLine;
+                int generatedColumn = mapping.generatedColumn;
+                if (generatedLine > line || (generatedLine == line && generatedColumn > column)) {
+                    break;
+                }
+                if (found == -1 || !mappings.get(found).generatedLine.equals(mapping.generatedLine)
+                        || !mappings.get(found).generatedColumn.equals(mapping.generatedColumn)) {
+                    found = next;
+                }
+                next++;
+            }
+            if (found == -1 || mappings.get(found).generatedLine != line) {
+                positions[i] = new OriginalPosition();
+                continue;
+            }
+            ParsedMapping mapping = mappings.get(found);
+            String source_ = null;
+            if (mapping.source != null) {
+                source_ = sources[mapping.source];
+                if (source_ == null) {
+                    source_ = this._sources.at(mapping.source);
+                    if (this.sourceRoot != null) {
+                        source_ = Util.join(this.sourceRoot, source_);
+                    }
+                    sources[mapping.source] = source_;
+                }
+            }
+            String name_ = mapping.name != null ? this._names.at(mapping.name) : null;
+            positions[i] = new OriginalPosition(mapping.originalLine, mapping.originalColumn, source_, name_);
+        }
+        return positions;
+    }
+
     /**
      * Return true if we have the source content for every source in the source map, false otherwise.
      */
@@ -443,7 +502,7 @@ class BasicSourceMapConsumer extends SourceMapConsumer {
         if (index >= 0) {
             ParsedMapping mapping = this._originalMappings().get(index);
 
-            if (mapping.source == needle.source) {
+            if (mapping.source.equals(needle.source)) {
                 return new GeneratedPosition(mapping.generatedLine != null ? mapping.generatedLine : null,
                         mapping.generatedColumn != null ? mapping.generatedColumn : null,
                         mapping.lastGeneratedColumn != null ? mapping.lastGeneratedColumn : null);
@@ -100,4 +100,46 @@ class BinarySearch {
 
         return index;
     }
+
+    /**
+     * Returns the index of the first of the `aLength` first elements of `aHaystack` which is not lower than `aNeedle`, or `aLength` if there is
+     * none.
+     */
+    private static int lowerBound(long aNeedle, long[] aHaystack, int aLength) {
+        int low = 0;
+        int high = aLength;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (aHaystack[mid] < aNeedle) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Same as {@link #search(Object, List, Comparator, Bias)} but over a sorted array of primitive keys, so that hot lookups neither allocate a needle
+     * nor go through a comparator.
+     */
+    static int search(long aNeedle, long[] aHaystack, Bias aBias) {
+        int index = lowerBound(aNeedle, aHaystack, aHaystack.length);
+        if (index < aHaystack.length && aHaystack[index] == aNeedle) {
+            // Found the element we are looking for, and it is already the smallest
+            // of the equal ones.
+            return index;
+        }
+
+        if (aBias == Bias.LEAST_UPPER_BOUND) {
+            return index < aHaystack.length ? index : -1;
+        }
+
+        if (index == 0) {
+            return -1;
+        }
+
+        // Make sure we always return the smallest of the equal elements.
+        return lowerBound(aHaystack[index - 1], aHaystack, index - 1);
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A SectionLoader which remembers the source maps loaded by another one, so that consumers of indexed maps sharing sections, or recreated for the
+ * same map, do not fetch and parse them again.
+ */
+public class CachingSectionLoader implements SectionLoader {
+
+    private SectionLoader delegate;
+
+    private Map<String, SourceMap> cache = new ConcurrentHashMap<>();
+
+    public CachingSectionLoader(SectionLoader delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public SourceMap load(String url) throws IOException {
+        SourceMap map = cache.get(url);
+        if (map == null) {
+            // Two threads may load the same url concurrently, but only the first
+            // loaded map is kept and shared.
+            map = delegate.load(url);
+            SourceMap previous = cache.putIfAbsent(url, map);
+            if (previous != null) {
+                map = previous;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Forget every loaded source map.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+}
@@ -0,0 +1,329 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A SourceMapGenerator to which mappings can be added from several threads at once. Each thread appends its mappings to its own buffer, and sources
+ * and names are interned in a concurrent table, so adding mappings doesn't contend on a lock. The buffers are merged and sorted when the source map
+ * is externalized or applySourceMap is called.
+ * <p>
+ * The mappings added by a thread must happen-before the merge, as for instance when the tasks adding them are awaited before calling toJSON. The
+ * sources and names are numbered by their first use in the sorted mappings, so the result doesn't depend on the interleaving of the threads.
+ */
+public class ConcurrentSourceMapGenerator extends SourceMapGenerator {
+
+    /**
+     * Interns strings concurrently: looking up a known string doesn't lock.
+     */
+    static final class ConcurrentInterner {
+
+        private final ConcurrentHashMap<String, Integer> _ids = new ConcurrentHashMap<>();
+
+        private final List<String> _values = new ArrayList<>();
+
+        int intern(String aValue) {
+            Integer id = this._ids.get(aValue);
+            if (id == null) {
+                synchronized (this) {
+                    id = this._ids.get(aValue);
+                    if (id == null) {
+                        id = this._values.size();
+                        this._values.add(aValue);
+                        this._ids.put(aValue, id);
+                    }
+                }
+            }
+            return id;
+        }
+
+        synchronized int size() {
+            return this._values.size();
+        }
+
+        synchronized List<String> values() {
+            return new ArrayList<>(this._values);
+        }
+
+        synchronized void reset(List<String> aValues) {
+            this._ids.clear();
+            this._values.clear();
+            for (String value : aValues) {
+                this._ids.put(value, this._values.size());
+                this._values.add(value);
+            }
+        }
+    }
+
+    private final ConcurrentInterner _sourceIds = new ConcurrentInterner();
+
+    private final ConcurrentInterner _nameIds = new ConcurrentInterner();
+
+    private final Queue<MappingList> _buffers = new ConcurrentLinkedQueue<>();
+
+    private final ThreadLocal<MappingList> _buffer = ThreadLocal.withInitial(() -> {
+        MappingList buffer = new MappingList();
+        this._buffers.add(buffer);
+        return buffer;
+    });
+
+    public ConcurrentSourceMapGenerator(String file, String sourceRoot) {
+        super(file, sourceRoot);
+    }
+
+    @Override
+    public void addMapping(Mapping aArgs) {
+        Position generated = aArgs.generated;
+        int name = aArgs.name != null ? this._nameIds.intern(aArgs.name) : -1;
+        if (aArgs.source != null) {
+            int source = this._sourceIds.intern(aArgs.source);
+            this._buffer.get().add(generated.line, generated.column, source, aArgs.original.line, aArgs.original.column, name);
+        } else {
+            this._buffer.get().add(generated.line, generated.column, -1, 0, 0, name);
+        }
+    }
+
+    @Override
+    public int addSource(String aSource) {
+        if (aSource == null) {
+            throw new RuntimeException("The source must not be null.");
+        }
+        return this._sourceIds.intern(aSource);
+    }
+
+    @Override
+    public int addName(String aName) {
+        if (aName == null) {
+            throw new RuntimeException("The name must not be null.");
+        }
+        return this._nameIds.intern(aName);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ids are the ones returned by addSource and addName of this generator, which stay valid until the mappings are merged.
+     */
+    @Override
+    public void addMappings(int[] aGeneratedLines, int[] aGeneratedColumns, int[] aSources, int[] aOriginalLines, int[] aOriginalColumns,
+            int[] aNames, int aOffset, int aLength) {
+        _checkIds(aSources, aNames, aOffset, aLength, this._sourceIds.size(), this._nameIds.size());
+        MappingList buffer = this._buffer.get();
+        for (int i = aOffset; i < aOffset + aLength; i++) {
+            if (aSources[i] != -1) {
+                buffer.add(aGeneratedLines[i], aGeneratedColumns[i], aSources[i], aOriginalLines[i], aOriginalColumns[i], aNames[i]);
+            } else {
+                buffer.add(aGeneratedLines[i], aGeneratedColumns[i], -1, 0, 0, aNames[i]);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void setSourceContent(String aSourceFile, String aSourceContent) {
+        super.setSourceContent(aSourceFile, aSourceContent);
+    }
+
+    @Override
+    public synchronized void setSourceContent(String aSourceFile, Path aPath, Charset aCharset) {
+        super.setSourceContent(aSourceFile, aPath, aCharset);
+    }
+
+    @Override
+    public synchronized void setDeferredSourceContent(String aSourceFile, Supplier<? extends CharSequence> aSupplier) {
+        super.setDeferredSourceContent(aSourceFile, aSupplier);
+    }
+
+    @Override
+    synchronized void applySourceMap(SourceMapConsumer aSourceMapConsumer, String aSourceFile, String aSourceMapPath) {
+        _merge();
+        super.applySourceMap(aSourceMapConsumer, aSourceFile, aSourceMapPath);
+        this._sourceIds.reset(this._sources.toArray());
+        this._nameIds.reset(this._names.toArray());
+    }
+
+    @Override
+    public synchronized void applySourceMaps(Function<String, SourceMapConsumer> aResolver, Function<String, String> aSourceMapPaths) {
+        _merge();
+        super.applySourceMaps(aResolver, aSourceMapPaths);
+        this._sourceIds.reset(this._sources.toArray());
+        this._nameIds.reset(this._names.toArray());
+    }
+
+    @Override
+    public synchronized void setIncrementalSerialization(boolean aIncremental) {
+        super.setIncrementalSerialization(aIncremental);
+    }
+
+    @Override
+    public synchronized void minimizeMappings(boolean aDropNames, boolean aPerOriginalLine) {
+        _merge();
+        super.minimizeMappings(aDropNames, aPerOriginalLine);
+        this._nameIds.reset(this._names.toArray());
+    }
+
+    @Override
+    synchronized MappingList _sortedMappings() {
+        _merge();
+        return this._mappings;
+    }
+
+    @Override
+    public synchronized SourceMap toJSON() {
+        _merge();
+        return super.toJSON();
+    }
+
+    @Override
+    public synchronized SourceMap toJSON(Executor aExecutor, int aParallelism) {
+        _merge();
+        return super.toJSON(aExecutor, aParallelism);
+    }
+
+    @Override
+    public synchronized void writeMappings(Appendable aOut, Executor aExecutor, int aParallelism) throws IOException {
+        _merge();
+        super.writeMappings(aOut, aExecutor, aParallelism);
+    }
+
+    @Override
+    public synchronized void writeMappings(Appendable aOut) throws IOException {
+        _merge();
+        super.writeMappings(aOut);
+    }
+
+    @Override
+    public synchronized void writeMappings(OutputStream aOut) throws IOException {
+        _merge();
+        super.writeMappings(aOut);
+    }
+
+    @Override
+    public synchronized void writeJSON(OutputStream aOut) throws IOException {
+        _merge();
+        super.writeJSON(aOut);
+    }
+
+    /**
+     * Moves the mappings of the thread buffers into the mappings of the generator, sorts them, and renumbers the sources and names in the order of
+     * their first use.
+     */
+    private void _merge() {
+        MappingList mappings = this._mappings;
+        boolean merged = false;
+        for (MappingList buffer : this._buffers) {
+            for (int i = 0, len = buffer.size(); i < len; i++) {
+                mappings.add(buffer.generatedLine(i), buffer.generatedColumn(i), buffer.source(i), buffer.originalLine(i), buffer.originalColumn(i),
+                        buffer.name(i));
+            }
+            if (buffer.size() > 0) {
+                merged = true;
+                // the thread keeps its buffer, so its grown arrays are released rather than kept along the merged mappings
+                buffer.clear();
+            }
+        }
+        List<String> sources = this._sourceIds.values();
+        List<String> names = this._nameIds.values();
+        if (!merged && sources.size() == this._sources.size() && names.size() == this._names.size()) {
+            return;
+        }
+        mappings.sortAll(sources, names);
+
+        int[] sourceIds = _newIds(sources.size());
+        int[] nameIds = _newIds(names.size());
+        int sourceCount = 0;
+        int nameCount = 0;
+        for (int i = 0, len = mappings.size(); i < len; i++) {
+            int source = mappings.source(i);
+            if (source != -1 && sourceIds[source] == -1) {
+                sourceIds[source] = sourceCount++;
+            }
+            int name = mappings.name(i);
+            if (name != -1 && nameIds[name] == -1) {
+                nameIds[name] = nameCount++;
+            }
+        }
+        // the sources and names registered but not used come last
+        _numberUnused(sources, sourceIds, sourceCount);
+        _numberUnused(names, nameIds, nameCount);
+        if (this._lineCache != null && (!_isIdentity(sourceIds) || !_isIdentity(nameIds))) {
+            this._lineCache.invalidate();
+        }
+        for (int i = 0, len = mappings.size(); i < len; i++) {
+            int source = mappings.source(i);
+            int name = mappings.name(i);
+            mappings.setOriginal(i, source != -1 ? sourceIds[source] : -1, mappings.originalLine(i), mappings.originalColumn(i),
+                    name != -1 ? nameIds[name] : -1);
+        }
+
+        List<String> newSources = _renumber(sources, sourceIds);
+        List<String> newNames = _renumber(names, nameIds);
+        this._sourceIds.reset(newSources);
+        this._nameIds.reset(newNames);
+        this._sources = ArraySet.fromArray(newSources, false);
+        this._names = ArraySet.fromArray(newNames, false);
+    }
+
+    private static int[] _newIds(int aCount) {
+        int[] ids = new int[aCount];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
+    private static boolean _isIdentity(int[] aIds) {
+        for (int i = 0; i < aIds.length; i++) {
+            if (aIds[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void _numberUnused(List<String> aValues, int[] aIds, int aCount) {
+        List<Integer> unused = new ArrayList<>();
+        for (int i = 0; i < aIds.length; i++) {
+            if (aIds[i] == -1) {
+                unused.add(i);
+            }
+        }
+        Collections.sort(unused, (id1, id2) -> aValues.get(id1).compareTo(aValues.get(id2)));
+        for (int id : unused) {
+            aIds[id] = aCount++;
+        }
+    }
+
+    private static List<String> _renumber(List<String> aValues, int[] aIds) {
+        String[] renumbered = new String[aValues.size()];
+        for (int i = 0; i < renumbered.length; i++) {
+            renumbered[aIds[i]] = aValues.get(i);
+        }
+        return Arrays.asList(renumbered);
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.Function;
+
+/**
+ * A SectionLoader which reads the source maps of the sections from the file system. Urls are either "file:" URIs or paths relative to a base
+ * directory.
+ * <p>
+ * This library does not parse JSON, so the content of the files is handed to a parser, typically a one-liner around the JSON library of the
+ * application.
+ */
+public class FileSectionLoader implements SectionLoader {
+
+    private Path baseDir;
+
+    private Function<String, SourceMap> parser;
+
+    /**
+     * @param baseDir
+     *            The directory against which relative urls are resolved.
+     * @param parser
+     *            The function which parses the JSON content of a source map.
+     */
+    public FileSectionLoader(Path baseDir, Function<String, SourceMap> parser) {
+        this.baseDir = baseDir;
+        this.parser = parser;
+    }
+
+    Path resolve(String url) {
+        if (url.startsWith("file:")) {
+            return Paths.get(URI.create(url));
+        }
+        return baseDir.resolve(url);
+    }
+
+    @Override
+    public SourceMap load(String url) throws IOException {
+        String json = new String(Files.readAllBytes(resolve(url)), StandardCharsets.UTF_8);
+        return parser.apply(json);
+    }
+
+}
@@ -15,10 +15,23 @@
  */
 package org.hibnet.jsourcemap;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.hibnet.jsourcemap.BinarySearch.Bias;
 
@@ -39,8 +52,8 @@ import org.hibnet.jsourcemap.BinarySearch.Bias;
  * </li>
  * <li>map: A source map definition. This source map could also be indexed, but doesn't have to be.</li>
  * </ul>
- * Instead of the "map" field, it's also possible to have a "url" field specifying a URL to retrieve a source map from, but that's currently
- * unsupported.
+ * Instead of the "map" field, it's also possible to have a "url" field specifying a URL to retrieve a source map from. Such sections are only
+ * supported if a {@link SectionLoader} is given, and they are only loaded the first time a lookup falls into them.
  * <p>
  * Here's an example source map, taken from the source map spec[0], but modified to omit a section which uses the "url" field.
  * 
@@ -77,46 +90,130 @@ class IndexedSourceMapConsumer extends SourceMapConsumer {
 
     static class ParsedSection {
         ParsedOffset generatedOffset;
-        SourceMapConsumer consumer;
+        private SourceMap map;
+        private String url;
+        private SectionLoader loader;
+        private volatile SourceMapConsumer consumer;
 
-        ParsedSection(ParsedOffset generatedOffset, SourceMapConsumer consumer) {
+        ParsedSection(ParsedOffset generatedOffset, SourceMap map, String url, SectionLoader loader) {
             this.generatedOffset = generatedOffset;
-            this.consumer = consumer;
+            this.map = map;
+            this.url = url;
+            this.loader = loader;
+        }
+
+        /**
+         * The consumer of the map of this section. It is only created the first time it is asked for, since an indexed source map may have thousands
+         * of sections while only a few of them are ever queried.
+         */
+        SourceMapConsumer consumer() {
+            SourceMapConsumer c = this.consumer;
+            if (c == null) {
+                synchronized (this) {
+                    c = this.consumer;
+                    if (c == null) {
+                        if (this.map == null) {
+                            try {
+                                this.map = this.loader.load(this.url);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException("Unable to load the section at " + this.url, e);
+                            }
+                        }
+                        c = SourceMapConsumer.create(this.map, this.loader);
+                        this.consumer = c;
+                        // the raw map is not needed anymore
+                        this.map = null;
+                    }
+                }
+            }
+            return c;
         }
     }
 
     private List<ParsedSection> _sections;
 
+    // The generated offsets of the sections, packed with `packOffset` and in the
+    // same order as `_sections`, so that finding the section of a generated
+    // position is a primitive binary search.
+    private long[] _sectionOffsets;
+
+    // The index of the section found by the last lookup. Consecutive lookups very
+    // often land in the same section, so it is checked before searching. Racy
+    // updates are harmless since the index is validated before use.
+    private int _lastSectionIndex = -1;
+
+    // The executor on which the sections are parsed, if any, and the maximum
+    // number of sections parsed at the same time.
+    private Executor _executor;
+
+    private int _parallelism;
+
     IndexedSourceMapConsumer(SourceMap sourceMap) {
+        this(sourceMap, null, null, 1);
+    }
+
+    IndexedSourceMapConsumer(SourceMap sourceMap, SectionLoader loader, Executor executor, int parallelism) {
         int version = sourceMap.version;
         List<Section> sections = sourceMap.sections;
 
         if (version != this._version) {
             throw new RuntimeException("Unsupported version: " + version);
         }
+        if (parallelism < 1) {
+            throw new RuntimeException("Parallelism must be at least 1, got " + parallelism);
+        }
+        this._executor = executor;
+        this._parallelism = parallelism;
 
         this._sources = new ArraySet<>();
         this._names = new ArraySet<>();
 
-        final Position[] lastOffset = new Position[1];
-        lastOffset[0] = new Position(-1, 0);
-        this._sections = sections.stream().map(s -> {
-            if (s.url != null) {
-                // The url field will require support for asynchronicity.
+        this._sections = new ArrayList<>(sections.size());
+        this._sectionOffsets = new long[sections.size()];
+        Position lastOffset = new Position(-1, 0);
+        for (Section s : sections) {
+            if (s.map == null && s.url != null && loader == null) {
+                // The url field requires a way to load the section.
                 // See https://github.com/mozilla/source-map/issues/16
-                throw new RuntimeException("Support for url field in sections not implemented.");
+                throw new RuntimeException("Support for url field in sections requires a SectionLoader.");
             }
             Position offset = s.offset;
             int offsetLine = offset.line;
             int offsetColumn = offset.column;
 
-            if (offsetLine < lastOffset[0].line || (offsetLine == lastOffset[0].line && offsetColumn < lastOffset[0].column)) {
+            if (offsetLine < lastOffset.line || (offsetLine == lastOffset.line && offsetColumn < lastOffset.column)) {
                 throw new RuntimeException("Section offsets must be ordered and non-overlapping.");
             }
-            lastOffset[0] = offset;
+            lastOffset = offset;
+
+            ParsedOffset generatedOffset = new ParsedOffset(offsetLine + 1, offsetColumn + 1);
+            this._sectionOffsets[this._sections.size()] = packOffset(generatedOffset.generatedLine, generatedOffset.generatedColumn);
+            this._sections.add(new ParsedSection(generatedOffset, s.map, s.url, loader));
+        }
+    }
+
+    /**
+     * Pack a generated line and column into a single key which sorts the same way as the (line, column) pair.
+     */
+    private static long packOffset(int line, int column) {
+        return ((long) line << 32) + column;
+    }
 
-            return new ParsedSection(new ParsedOffset(offsetLine + 1, offsetColumn + 1), SourceMapConsumer.create(s.map));
-        }).collect(Collectors.toList());
+    /**
+     * Find the index of the section containing the given generated position, or -1 if the position is before the first section.
+     */
+    private int _findSection(int line, int column) {
+        long needle = packOffset(line, column);
+        int index = this._lastSectionIndex;
+        if (index >= 0 && this._sectionOffsets[index] <= needle
+                && (index + 1 == this._sectionOffsets.length || needle < this._sectionOffsets[index + 1])) {
+            return index;
+        }
+        index = BinarySearch.search(needle, this._sectionOffsets, null);
+        if (index >= 0) {
+            this._lastSectionIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -124,18 +221,51 @@ class IndexedSourceMapConsumer extends SourceMapConsumer {
      */
     int _version = 3;
 
+    // The resolved sources of all the sections, and for each of them the sections
+    // which contain it. They are lazily computed by `_indexSources()`: finding
+    // them requires creating the consumer of every section.
+    private volatile List<String> __sources = null;
+
+    private volatile Map<String, List<ParsedSection>> __sourceSections = null;
+
+    private void _indexSources() {
+        List<String> sources = new ArrayList<>();
+        Map<String, List<ParsedSection>> sourceSections = new HashMap<>();
+        for (int i = 0; i < this._sections.size(); i++) {
+            ParsedSection section = this._sections.get(i);
+            for (String source : section.consumer().sources()) {
+                sources.add(source);
+                List<ParsedSection> sections = sourceSections.computeIfAbsent(source, s -> new ArrayList<>(1));
+                // a section may list the same source twice
+                if (sections.isEmpty() || sections.get(sections.size() - 1) != section) {
+                    sections.add(section);
+                }
+            }
+        }
+        this.__sources = Collections.unmodifiableList(sources);
+        this.__sourceSections = sourceSections;
+    }
+
     /**
      * The list of original sources.
      */
     @Override
     public List<String> sources() {
-        List<String> sources = new ArrayList<>();
-        for (int i = 0; i < this._sections.size(); i++) {
-            for (int j = 0; j < this._sections.get(i).consumer.sources().size(); j++) {
-                sources.add(this._sections.get(i).consumer.sources().get(j));
-            }
+        if (this.__sources == null) {
+            _indexSources();
         }
-        return sources;
+        return this.__sources;
+    }
+
+    /**
+     * The sections which contain the given resolved source, in the order of the sections.
+     */
+    private List<ParsedSection> _sectionsOf(String source) {
+        if (this.__sourceSections == null) {
+            _indexSources();
+        }
+        List<ParsedSection> sections = this.__sourceSections.get(source);
+        return sections == null ? Collections.emptyList() : sections;
     }
 
     /**
@@ -154,28 +284,52 @@ class IndexedSourceMapConsumer extends SourceMapConsumer {
      * </ul>
      */
     public OriginalPosition originalPositionFor(int line, int column, Bias bias) {
-        ParsedSection needle = new ParsedSection(new ParsedOffset(line, column), null);
-
         // Find the section containing the generated position we're trying to map
         // to an original position.
-        int sectionIndex = BinarySearch.search(needle, this._sections, (section1, section2) -> {
-            int cmp = section1.generatedOffset.generatedLine - section2.generatedOffset.generatedLine;
-            if (cmp != 0) {
-                return cmp;
-            }
-
-            return (section1.generatedOffset.generatedColumn - section2.generatedOffset.generatedColumn);
-        } , null);
-        ParsedSection section = this._sections.get(sectionIndex);
-
-        if (section == null) {
+        int sectionIndex = _findSection(line, column);
+        if (sectionIndex < 0) {
             return new OriginalPosition();
         }
+        ParsedSection section = this._sections.get(sectionIndex);
+        ParsedOffset offset = section.generatedOffset;
 
-        return section.consumer.originalPositionFor(needle.generatedOffset.generatedLine - (section.generatedOffset.generatedLine - 1),
-                needle.generatedOffset.generatedColumn - (section.generatedOffset.generatedLine == needle.generatedOffset.generatedLine
-                        ? section.generatedOffset.generatedColumn - 1 : 0),
-                bias);
+        return section.consumer().originalPositionFor(line - (offset.generatedLine - 1),
+                column - (offset.generatedLine == line ? offset.generatedColumn - 1 : 0), bias);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The positions falling in the same section being consecutive, each run of them is looked up at once by the consumer of the section.
+     */
+    @Override
+    OriginalPosition[] _originalPositionsFor(int[] aLines, int[] aColumns, int aLength) {
+        OriginalPosition[] positions = new OriginalPosition[aLength];
+        int[] lines = new int[aLength];
+        int[] columns = new int[aLength];
+        int start = 0;
+        while (start < aLength) {
+            int sectionIndex = _findSection(aLines[start], aColumns[start]);
+            int end = start + 1;
+            while (end < aLength && _findSection(aLines[end], aColumns[end]) == sectionIndex) {
+                end++;
+            }
+            if (sectionIndex < 0) {
+                for (int i = start; i < end; i++) {
+                    positions[i] = new OriginalPosition();
+                }
+            } else {
+                ParsedOffset offset = this._sections.get(sectionIndex).generatedOffset;
+                for (int i = start; i < end; i++) {
+                    lines[i - start] = aLines[i] - (offset.generatedLine - 1);
+                    columns[i - start] = aColumns[i] - (offset.generatedLine == aLines[i] ? offset.generatedColumn - 1 : 0);
+                }
+                OriginalPosition[] found = this._sections.get(sectionIndex).consumer()._originalPositionsFor(lines, columns, end - start);
+                System.arraycopy(found, 0, positions, start, end - start);
+            }
+            start = end;
+        }
+        return positions;
     }
 
     /**
@@ -183,7 +337,7 @@ class IndexedSourceMapConsumer extends SourceMapConsumer {
      */
     @Override
     public boolean hasContentsOfAllSources() {
-        return this._sections.stream().allMatch(s -> s.consumer.hasContentsOfAllSources());
+        return this._sections.stream().allMatch(s -> s.consumer().hasContentsOfAllSources());
     }
 
     /**
@@ -194,7 +348,7 @@ class IndexedSourceMapConsumer extends SourceMapConsumer {
     String sourceContentFor(String aSource, Boolean nullOnMissing) {
         for (int i = 0; i < this._sections.size(); i++) {
             ParsedSection section = this._sections.get(i);
-            String content = section.consumer.sourceContentFor(aSource, true);
+            String content = section.consumer().sourceContentFor(aSource, true);
             if (content != null) {
                 return content;
             }
@@ -222,16 +376,11 @@ class IndexedSourceMapConsumer extends SourceMapConsumer {
      */
     @Override
     public GeneratedPosition generatedPositionFor(String source, int line, int column, Bias bias) {
-        for (int i = 0; i < this._sections.size(); i++) {
-            ParsedSection section = this._sections.get(i);
-
-            // Only consider this section if the requested source is in the list of
-            // sources of the consumer.
-            if (section.consumer.sources().indexOf(source) == -1) {
-                continue;
-            }
-            GeneratedPosition generatedPosition = section.consumer.generatedPositionFor(source, line, column, bias);
-            if (generatedPosition != null) {
+        // Only consider the sections which have the requested source in the list
+        // of sources of their consumer.
+        for (ParsedSection section : _sectionsOf(source)) {
+            GeneratedPosition generatedPosition = section.consumer().generatedPositionFor(source, line, column, bias);
+            if (generatedPosition.line != null) {
                 GeneratedPosition ret = new GeneratedPosition(generatedPosition.line + (section.generatedOffset.generatedLine - 1),
                         generatedPosition.column
                                 + (section.generatedOffset.generatedLine == generatedPosition.line ? section.generatedOffset.generatedColumn - 1 : 0),
@@ -243,48 +392,304 @@ class IndexedSourceMapConsumer extends SourceMapConsumer {
         return new GeneratedPosition();
     }
 
+    /**
+     * Translates the mappings of a section into mappings of this consumer. The indexes of the sources and names of the section are translated
+     * through a table computed once per section, and the indexes of this consumer are assigned the first time a mapping refers to them, as if each
+     * mapping was added one after the other.
+     */
+    private final class SectionTranslator {
+
+        private SourceMapConsumer consumer;
+        private int offsetLine;
+        private int offsetColumn;
+        private Integer[] sources;
+        private Integer[] names;
+
+        SectionTranslator(ParsedSection section) {
+            this.consumer = section.consumer();
+            this.offsetLine = section.generatedOffset.generatedLine;
+            this.offsetColumn = section.generatedOffset.generatedColumn;
+            this.sources = new Integer[consumer._sources.toArray().size()];
+            this.names = new Integer[consumer._names.toArray().size()];
+        }
+
+        ParsedMapping translate(ParsedMapping mapping) {
+            return translate(mapping, new ParsedMapping());
+        }
+
+        /**
+         * Translate a mapping into the given one, which is returned.
+         */
+        ParsedMapping translate(ParsedMapping mapping, ParsedMapping aTranslated) {
+            // The mappings coming from the consumer for the section have
+            // generated positions relative to the start of the section, so we
+            // need to offset them to be relative to the start of the concatenated
+            // generated file.
+            aTranslated.generatedLine = mapping.generatedLine + (this.offsetLine - 1);
+            aTranslated.generatedColumn = mapping.generatedColumn + ((this.offsetLine == mapping.generatedLine) ? this.offsetColumn - 1 : 0);
+            aTranslated.originalLine = mapping.originalLine;
+            aTranslated.originalColumn = mapping.originalColumn;
+            aTranslated.source = source(mapping.source);
+            aTranslated.name = name(mapping.name);
+            return aTranslated;
+        }
+
+        Integer source(Integer aSource) {
+            if (aSource == null) {
+                return null;
+            }
+            Integer source_ = this.sources[aSource];
+            if (source_ == null) {
+                String source = this.consumer._sources.at(aSource);
+                if (this.consumer.sourceRoot != null) {
+                    source = Util.join(this.consumer.sourceRoot, source);
+                }
+                _sources.add(source);
+                source_ = _sources.indexOf(source);
+                this.sources[aSource] = source_;
+            }
+            return source_;
+        }
+
+        Integer name(Integer aName) {
+            if (aName == null) {
+                return null;
+            }
+            Integer name_ = this.names[aName];
+            if (name_ == null) {
+                String name = this.consumer._names.at(aName);
+                _names.add(name);
+                name_ = _names.indexOf(name);
+                this.names[aName] = name_;
+            }
+            return name_;
+        }
+    }
+
+    /**
+     * Parse the mappings of every section on the executor, with at most `_parallelism` sections being parsed at the same time. Each section is
+     * independent, and the results are only merged afterwards, in the order of the sections, so the result does not depend on the scheduling.
+     * <p>
+     * Nested indexed maps are parsed sequentially by the task which parses them: waiting for sub-tasks from within a task could starve a bounded
+     * executor.
+     */
+    private void _parseSections() {
+        AtomicInteger nextSection = new AtomicInteger();
+        Runnable worker = () -> {
+            int i;
+            while ((i = nextSection.getAndIncrement()) < this._sections.size()) {
+                SourceMapConsumer consumer = this._sections.get(i).consumer();
+                consumer._generatedMappings();
+                consumer._originalMappings();
+            }
+        };
+
+        int nbWorkers = Math.min(this._parallelism, this._sections.size());
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[nbWorkers];
+        for (int i = 0; i < nbWorkers; i++) {
+            workers[i] = CompletableFuture.runAsync(worker, this._executor);
+        }
+        try {
+            CompletableFuture.allOf(workers).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Parse the mappings in a string in to a data structure which we can easily query (the ordered arrays in the `this.__generatedMappings` and
      * `this.__originalMappings` properties).
+     * <p>
+     * The sections are ordered and their mappings are already sorted, so they are copied one section after the other, and the original order is
+     * obtained by merging the sorted mappings of each section rather than sorting everything again.
      */
     @Override
     void _parseMappings(String aStr, String aSourceRoot) {
-        this.__generatedMappings = new ArrayList<>();
-        this.__originalMappings = new ArrayList<>();
+        if (this._executor != null && this._parallelism > 1 && this._sections.size() > 1) {
+            _parseSections();
+        }
+
+        List<ParsedMapping> generatedMappings = new ArrayList<>();
+        boolean generatedSorted = true;
+        // For each source of this consumer, the sorted runs of original mappings
+        // of the sections.
+        List<List<List<ParsedMapping>>> sourceRuns = new ArrayList<>();
+        int originalCount = 0;
+
         for (int i = 0; i < this._sections.size(); i++) {
-            ParsedSection section = this._sections.get(i);
-            List<ParsedMapping> sectionMappings = section.consumer._generatedMappings();
+            SectionTranslator translator = new SectionTranslator(this._sections.get(i));
+            SourceMapConsumer consumer = translator.consumer;
+
+            List<ParsedMapping> sectionMappings = consumer._generatedMappings();
+            Map<ParsedMapping, ParsedMapping> adjustedMappings = new IdentityHashMap<>(sectionMappings.size());
             for (int j = 0; j < sectionMappings.size(); j++) {
                 ParsedMapping mapping = sectionMappings.get(j);
+                ParsedMapping adjustedMapping = translator.translate(mapping);
 
-                String source = section.consumer._sources.at(mapping.source);
-                if (section.consumer.sourceRoot != null) {
-                    source = Util.join(section.consumer.sourceRoot, source);
+                if (generatedSorted && !generatedMappings.isEmpty()
+                        && Util.compareByGeneratedPositionsDeflated(generatedMappings.get(generatedMappings.size() - 1), adjustedMapping) > 0) {
+                    generatedSorted = false;
                 }
-                this._sources.add(source);
-                Integer source_ = this._sources.indexOf(source);
-
-                String name = section.consumer._names.at(mapping.name);
-                this._names.add(name);
-                Integer name_ = this._names.indexOf(name);
-
-                // The mappings coming from the consumer for the section have
-                // generated positions relative to the start of the section, so we
-                // need to offset them to be relative to the start of the concatenated
-                // generated file.
-                ParsedMapping adjustedMapping = new ParsedMapping(mapping.generatedLine + (section.generatedOffset.generatedLine - 1),
-                        mapping.generatedColumn + ((section.generatedOffset.generatedLine == mapping.generatedLine)
-                                ? section.generatedOffset.generatedColumn - 1 : 0),
-                        mapping.originalLine, mapping.originalColumn, source_, name_);
-
-                this.__generatedMappings.add(adjustedMapping);
+                generatedMappings.add(adjustedMapping);
                 if (adjustedMapping.originalLine != null) {
-                    this.__originalMappings.add(adjustedMapping);
+                    adjustedMappings.put(mapping, adjustedMapping);
+                }
+            }
+
+            // The original mappings of the section are sorted by the section's
+            // source index first, so they are made of runs of a single source.
+            List<ParsedMapping> run = null;
+            for (ParsedMapping mapping : consumer._originalMappings()) {
+                ParsedMapping adjustedMapping = adjustedMappings.get(mapping);
+                if (run == null || !run.get(0).source.equals(adjustedMapping.source)) {
+                    run = new ArrayList<>();
+                    while (sourceRuns.size() <= adjustedMapping.source) {
+                        sourceRuns.add(null);
+                    }
+                    List<List<ParsedMapping>> runs = sourceRuns.get(adjustedMapping.source);
+                    if (runs == null) {
+                        runs = new ArrayList<>(1);
+                        sourceRuns.set(adjustedMapping.source, runs);
+                    }
+                    runs.add(run);
                 }
+                run.add(adjustedMapping);
+                originalCount++;
             }
         }
 
-        Collections.sort(this.__generatedMappings, Util::compareByGeneratedPositionsDeflated);
-        Collections.sort(this.__originalMappings, Util::compareByOriginalPositions);
+        // Sections are not supposed to overlap, but nothing prevents the mappings
+        // of a section to go beyond the offset of the next one.
+        if (!generatedSorted) {
+            Collections.sort(generatedMappings, Util::compareByGeneratedPositionsDeflated);
+        }
+
+        List<ParsedMapping> originalMappings = new ArrayList<>(originalCount);
+        for (List<List<ParsedMapping>> runs : sourceRuns) {
+            if (runs == null) {
+                continue;
+            }
+            List<Iterator<ParsedMapping>> iterators = new ArrayList<>(runs.size());
+            for (List<ParsedMapping> run : runs) {
+                // Remapping the names and offsetting the generated columns rarely
+                // changes the order within a run, but it can.
+                for (int j = 1; j < run.size(); j++) {
+                    if (Util.compareByOriginalPositions(run.get(j - 1), run.get(j)) > 0) {
+                        Collections.sort(run, Util::compareByOriginalPositions);
+                        break;
+                    }
+                }
+                iterators.add(run.iterator());
+            }
+            if (iterators.size() == 1) {
+                originalMappings.addAll(runs.get(0));
+            } else {
+                new MergeIterator<>(iterators, Util::compareByOriginalPositions).forEachRemaining(originalMappings::add);
+            }
+        }
+
+        this.__generatedMappings = generatedMappings;
+        this.__originalMappings = originalMappings;
+    }
+
+    /**
+     * Iterate over the mappings without flattening the sections, unless it has already been done. In generated order the sections are walked one
+     * after the other, and in original order the sorted mappings of the sections are merged on the fly. Only the parsed mappings of each section are
+     * kept, by the consumer of the section.
+     * <p>
+     * The mappings come in the same order as the flattened ones, except in the generated order for the mappings of a section which go beyond the
+     * offset of the next section: they are not reordered.
+     */
+    @Override
+    Stream<Mapping> eachMapping(Order aOrder) {
+        if (this.__generatedMappings != null) {
+            return super.eachMapping(aOrder);
+        }
+        if (aOrder == null) {
+            aOrder = Order.generated;
+        }
+        if (this._executor != null && this._parallelism > 1 && this._sections.size() > 1) {
+            _parseSections();
+        }
+
+        switch (aOrder) {
+        case generated:
+            return this._sections.stream().flatMap(section -> {
+                SectionTranslator translator = new SectionTranslator(section);
+                return translator.consumer._generatedMappings().stream().map(mapping -> _toMapping(translator.translate(mapping)));
+            });
+        case original:
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(_originalMappingsIterator(), Spliterator.ORDERED), false)
+                    .map(this::_toMapping);
+        default:
+            throw new RuntimeException("Unknown order of iteration.");
+        }
+    }
+
+    /**
+     * Merge the original mappings of the sections on the fly, in the order of `__originalMappings`. The mappings of a section are translated as
+     * they are iterated; only a run of a single source whose order is changed by the translation is translated up front, to be sorted.
+     */
+    private Iterator<ParsedMapping> _originalMappingsIterator() {
+        // Assign the indexes of the sources and names in the same order as the
+        // flattening, so that the mappings are sorted the same way.
+        List<SectionTranslator> translators = new ArrayList<>(this._sections.size());
+        for (int i = 0; i < this._sections.size(); i++) {
+            SectionTranslator translator = new SectionTranslator(this._sections.get(i));
+            for (ParsedMapping mapping : translator.consumer._generatedMappings()) {
+                translator.source(mapping.source);
+                translator.name(mapping.name);
+            }
+            translators.add(translator);
+        }
+
+        // The original mappings of a section are made of runs of a single source,
+        // which are each merged with the others.
+        List<Iterator<ParsedMapping>> runs = new ArrayList<>();
+        ParsedMapping previous = new ParsedMapping();
+        ParsedMapping current = new ParsedMapping();
+        for (SectionTranslator translator : translators) {
+            List<ParsedMapping> mappings = translator.consumer._originalMappings();
+            int start = 0;
+            boolean sorted = true;
+            for (int j = 1; j <= mappings.size(); j++) {
+                if (j == mappings.size() || !mappings.get(j).source.equals(mappings.get(start).source)) {
+                    runs.add(_run(translator, mappings.subList(start, j), sorted));
+                    start = j;
+                    sorted = true;
+                } else if (sorted) {
+                    // Remapping the names and offsetting the generated columns
+                    // rarely changes the order within a run, but it can.
+                    translator.translate(mappings.get(j - 1), previous);
+                    translator.translate(mappings.get(j), current);
+                    sorted = Util.compareByOriginalPositions(previous, current) <= 0;
+                }
+            }
+        }
+
+        return new MergeIterator<>(runs, Util::compareByOriginalPositions);
+    }
+
+    private static Iterator<ParsedMapping> _run(SectionTranslator aTranslator, List<ParsedMapping> aMappings, boolean aSorted) {
+        if (aSorted) {
+            return aMappings.stream().map(aTranslator::translate).iterator();
+        }
+        List<ParsedMapping> run = new ArrayList<>(aMappings.size());
+        for (ParsedMapping mapping : aMappings) {
+            run.add(aTranslator.translate(mapping));
+        }
+        Collections.sort(run, Util::compareByOriginalPositions);
+        return run.iterator();
+    }
+
+    private Mapping _toMapping(ParsedMapping mapping) {
+        return new Mapping(new Position(mapping.generatedLine, mapping.generatedColumn), new Position(mapping.originalLine, mapping.originalColumn),
+                mapping.source == null ? null : this._sources.at(mapping.source), mapping.name == null ? null : this._names.at(mapping.name));
     }
 }
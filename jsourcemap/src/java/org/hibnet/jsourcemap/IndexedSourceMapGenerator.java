@@ -0,0 +1,183 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An IndexedSourceMapGenerator builds an indexed source map, made of sections which are source maps placed at an offset in the generated file, as
+ * when pre-built modules are concatenated. The mappings of the sections are not merged: the source map of each section is written as is, with its
+ * encoded mappings, so the cost of building the source map depends on the number of sections, not on the number of mappings. An indexed source map is
+ * read by the IndexedSourceMapConsumer.
+ */
+public class IndexedSourceMapGenerator {
+
+    private static final class GeneratorSection {
+
+        final int offsetLine;
+
+        final int offsetColumn;
+
+        final SourceMap map;
+
+        final SourceMapGenerator generator;
+
+        GeneratorSection(int offsetLine, int offsetColumn, SourceMap map, SourceMapGenerator generator) {
+            this.offsetLine = offsetLine;
+            this.offsetColumn = offsetColumn;
+            this.map = map;
+            this.generator = generator;
+        }
+    }
+
+    private String _file;
+
+    private List<GeneratorSection> _sections = new ArrayList<>();
+
+    /**
+     * @param file
+     *            Optional. The filename of the generated source.
+     */
+    public IndexedSourceMapGenerator(String file) {
+        this._file = file;
+    }
+
+    /**
+     * Add a section made of a source map.
+     *
+     * @param aOffsetLine
+     *            The 0-based line in the generated file at which the section starts.
+     * @param aOffsetColumn
+     *            The 0-based column in the generated file at which the section starts.
+     * @param aMap
+     *            The source map of the section, which must not be an indexed one.
+     */
+    public void addSection(int aOffsetLine, int aOffsetColumn, SourceMap aMap) {
+        if (aMap.sections != null) {
+            throw new RuntimeException("The source map of a section must not be an indexed source map.");
+        }
+        _addSection(new GeneratorSection(aOffsetLine, aOffsetColumn, aMap, null));
+    }
+
+    /**
+     * Add a section made of the source map of a generator. The generator is externalized when this source map is, so it may still be modified in
+     * the meantime.
+     *
+     * @param aOffsetLine
+     *            The 0-based line in the generated file at which the section starts.
+     * @param aOffsetColumn
+     *            The 0-based column in the generated file at which the section starts.
+     * @param aGenerator
+     *            The generator of the source map of the section.
+     */
+    public void addSection(int aOffsetLine, int aOffsetColumn, SourceMapGenerator aGenerator) {
+        _addSection(new GeneratorSection(aOffsetLine, aOffsetColumn, null, aGenerator));
+    }
+
+    private void _addSection(GeneratorSection aSection) {
+        if (aSection.offsetLine < 0 || aSection.offsetColumn < 0) {
+            throw new RuntimeException("Section offsets must be positive, got " + aSection.offsetLine + ":" + aSection.offsetColumn);
+        }
+        if (!this._sections.isEmpty()) {
+            GeneratorSection last = this._sections.get(this._sections.size() - 1);
+            if (aSection.offsetLine < last.offsetLine || (aSection.offsetLine == last.offsetLine && aSection.offsetColumn < last.offsetColumn)) {
+                throw new RuntimeException("Section offsets must be ordered and non-overlapping.");
+            }
+        }
+        this._sections.add(aSection);
+    }
+
+    /**
+     * Externalize the indexed source map.
+     */
+    public SourceMap toJSON() {
+        SourceMap map = new SourceMap();
+        map.version = 3;
+        map.file = this._file;
+        map.sections = new ArrayList<>(this._sections.size());
+        for (GeneratorSection section : this._sections) {
+            Section s = new Section();
+            s.offset = new Position(section.offsetLine, section.offsetColumn);
+            s.map = section.map != null ? section.map : section.generator.toJSON();
+            map.sections.add(s);
+        }
+        return map;
+    }
+
+    /**
+     * Write the indexed source map as JSON, encoded in UTF-8, to the given OutputStream. The sections made of a generator are written as
+     * {@link SourceMapGenerator#writeJSON(OutputStream)} does. The OutputStream is neither flushed nor closed.
+     */
+    public void writeJSON(OutputStream aOut) throws IOException {
+        JsonWriter writer = new JsonWriter(aOut);
+        writer.raw("{\"version\":3");
+        if (this._file != null) {
+            writer.raw(",\"file\":");
+            writer.string(this._file);
+        }
+        writer.raw(",\"sections\":[");
+        for (int i = 0; i < this._sections.size(); i++) {
+            GeneratorSection section = this._sections.get(i);
+            if (i > 0) {
+                writer.raw(",");
+            }
+            writer.raw("{\"offset\":{\"line\":");
+            writer.raw(Integer.toString(section.offsetLine));
+            writer.raw(",\"column\":");
+            writer.raw(Integer.toString(section.offsetColumn));
+            writer.raw("},\"map\":");
+            if (section.map != null) {
+                _writeMap(writer, section.map);
+            } else {
+                writer.flush();
+                section.generator.writeJSON(aOut);
+            }
+            writer.raw("}");
+        }
+        writer.raw("]}");
+        writer.flush();
+    }
+
+    private static void _writeMap(JsonWriter aWriter, SourceMap aMap) throws IOException {
+        aWriter.raw("{\"version\":");
+        aWriter.raw(Integer.toString(aMap.version));
+        aWriter.raw(",\"sources\":");
+        aWriter.strings(aMap.sources);
+        if (aMap.names != null) {
+            aWriter.raw(",\"names\":");
+            aWriter.strings(aMap.names);
+        }
+        aWriter.raw(",\"mappings\":");
+        aWriter.string(aMap.mappings);
+        if (aMap.file != null) {
+            aWriter.raw(",\"file\":");
+            aWriter.string(aMap.file);
+        }
+        if (aMap.sourceRoot != null) {
+            aWriter.raw(",\"sourceRoot\":");
+            aWriter.string(aMap.sourceRoot);
+        }
+        if (aMap.sourcesContent != null) {
+            aWriter.raw(",\"sourcesContent\":");
+            aWriter.strings(aMap.sourcesContent);
+        }
+        aWriter.raw("}");
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes JSON as UTF-8 to an OutputStream through a fixed size buffer. Strings are escaped and encoded as they are written, so no intermediate
+ * string is built, whatever the size of the written values.
+ */
+class JsonWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private final OutputStream _out;
+
+    private final byte[] _buffer = new byte[BUFFER_SIZE];
+
+    private int _length = 0;
+
+    // a high surrogate ending the last chunk of string content, waiting for its low surrogate
+    private char _pendingHighSurrogate = 0;
+
+    JsonWriter(OutputStream aOut) {
+        this._out = aOut;
+    }
+
+    /**
+     * Writes ASCII text as is, typically punctuation, keys or numbers.
+     */
+    void raw(String aAscii) throws IOException {
+        for (int i = 0; i < aAscii.length(); i++) {
+            _byte(aAscii.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped string, or null.
+     */
+    void string(CharSequence aValue) throws IOException {
+        if (aValue == null) {
+            raw("null");
+            return;
+        }
+        _byte('"');
+        stringContent(aValue, 0, aValue.length());
+        endStringContent();
+        _byte('"');
+    }
+
+    /**
+     * Writes an array of strings, some of which may be null.
+     */
+    void strings(List<? extends CharSequence> aValues) throws IOException {
+        _byte('[');
+        for (int i = 0; i < aValues.size(); i++) {
+            if (i > 0) {
+                _byte(',');
+            }
+            string(aValues.get(i));
+        }
+        _byte(']');
+    }
+
+    /**
+     * Writes the escaped chars of a string being written by parts, without the quotes. A surrogate pair may be split between two parts.
+     */
+    void stringContent(CharSequence aChars, int aStart, int aEnd) throws IOException {
+        for (int i = aStart; i < aEnd; i++) {
+            _char(aChars.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the escaped chars of a string being written by parts, without the quotes. A surrogate pair may be split between two parts.
+     */
+    void stringContent(char[] aChars, int aStart, int aEnd) throws IOException {
+        for (int i = aStart; i < aEnd; i++) {
+            _char(aChars[i]);
+        }
+    }
+
+    /**
+     * Ends the content of a string written by parts.
+     */
+    void endStringContent() throws IOException {
+        if (this._pendingHighSurrogate != 0) {
+            _escape(this._pendingHighSurrogate);
+            this._pendingHighSurrogate = 0;
+        }
+    }
+
+    private void _char(char c) throws IOException {
+        if (this._pendingHighSurrogate != 0) {
+            char high = this._pendingHighSurrogate;
+            this._pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                _ensure(4);
+                this._buffer[this._length++] = (byte) (0xF0 | (codePoint >> 18));
+                this._buffer[this._length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                this._buffer[this._length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                this._buffer[this._length++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            // a lone surrogate is not valid UTF-8, but it can be escaped
+            _escape(high);
+        }
+        if (c < 0x80) {
+            if (c == '"' || c == '\\') {
+                _byte('\\');
+                _byte(c);
+            } else if (c >= 0x20) {
+                _byte(c);
+            } else if (c == '\n') {
+                raw("\\n");
+            } else if (c == '\r') {
+                raw("\\r");
+            } else if (c == '\t') {
+                raw("\\t");
+            } else if (c == '\b') {
+                raw("\\b");
+            } else if (c == '\f') {
+                raw("\\f");
+            } else {
+                _escape(c);
+            }
+        } else if (c < 0x800) {
+            _ensure(2);
+            this._buffer[this._length++] = (byte) (0xC0 | (c >> 6));
+            this._buffer[this._length++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this._pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            _escape(c);
+        } else {
+            _ensure(3);
+            this._buffer[this._length++] = (byte) (0xE0 | (c >> 12));
+            this._buffer[this._length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            this._buffer[this._length++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void _escape(char c) throws IOException {
+        _ensure(6);
+        this._buffer[this._length++] = '\\';
+        this._buffer[this._length++] = 'u';
+        this._buffer[this._length++] = HEX_DIGITS[(c >> 12) & 0xF];
+        this._buffer[this._length++] = HEX_DIGITS[(c >> 8) & 0xF];
+        this._buffer[this._length++] = HEX_DIGITS[(c >> 4) & 0xF];
+        this._buffer[this._length++] = HEX_DIGITS[c & 0xF];
+    }
+
+    private void _byte(char c) throws IOException {
+        if (this._length == this._buffer.length) {
+            flush();
+        }
+        this._buffer[this._length++] = (byte) c;
+    }
+
+    private void _ensure(int aBytes) throws IOException {
+        if (this._length + aBytes > this._buffer.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the OutputStream, so that it can be written to directly.
+     */
+    void flush() throws IOException {
+        if (this._length > 0) {
+            this._out.write(this._buffer, 0, this._length);
+            this._length = 0;
+        }
+    }
+
+}
@@ -15,81 +15,463 @@
  */
 package org.hibnet.jsourcemap;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.function.IntConsumer;
 
 class MappingList {
 
-    private List<Mapping> _array;
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The mappings are stored by columns. Sources and names are ids in the
+    // sources and names of the generator, -1 for none. The original position
+    // is 0:0 when there is no source.
+    private int[] _generatedLines;
+    private int[] _generatedColumns;
+    private int[] _sources;
+    private int[] _originalLines;
+    private int[] _originalColumns;
+    private int[] _names;
+    private int _size;
+
     private boolean _sorted;
-    private Mapping _last;
+    private boolean _linesSorted;
+    private int _lastGeneratedLine;
+    private int _lastGeneratedColumn;
+    private int _lastLineStart;
 
-    /**
-     * Determine whether mappingB is after mappingA with respect to generated position.
-     */
-    private boolean generatedPositionAfter(Mapping mappingA, Mapping mappingB) {
-        // Optimized for most common case
-        int lineA = mappingA.generated.line;
-        int lineB = mappingB.generated.line;
-        int columnA = mappingA.generated.column;
-        int columnB = mappingB.generated.column;
-        return lineB > lineA || lineB == lineA && columnB >= columnA || Util.compareByGeneratedPositionsInflated(mappingA, mappingB) <= 0;
-    }
+    // While the lines are in order, the mappings of a line are contiguous, and
+    // the lines with mappings out of order or at the same position are known
+    // by the index of their first mapping, so only them need to be sorted.
+    private int[] _unsortedLineStarts;
+    private int _unsortedLineCount;
+
+    // Notified of the lines which get new mappings or are reordered
+    private IntConsumer _lineListener;
 
     /**
      * A data structure to provide a sorted view of accumulated mappings in a performance conscious manner. It trades a neglibable overhead in general
-     * case for a large speedup in case of mappings being added in order.
+     * case for a large speedup in case of mappings being added in order. Mappings are ordered by generated line first, and only the lines which got
+     * mappings out of order are sorted.
      */
     MappingList() {
-        this._array = new ArrayList<>();
+        _init();
+    }
+
+    private void _init() {
+        this._generatedLines = new int[INITIAL_CAPACITY];
+        this._generatedColumns = new int[INITIAL_CAPACITY];
+        this._sources = new int[INITIAL_CAPACITY];
+        this._originalLines = new int[INITIAL_CAPACITY];
+        this._originalColumns = new int[INITIAL_CAPACITY];
+        this._names = new int[INITIAL_CAPACITY];
+        this._size = 0;
         this._sorted = true;
+        this._linesSorted = true;
         // Serves as infimum
-        this._last = new Mapping(new Position(-1, 0));
+        this._lastGeneratedLine = -1;
+        this._lastGeneratedColumn = 0;
+        this._lastLineStart = 0;
+        this._unsortedLineStarts = new int[4];
+        this._unsortedLineCount = 0;
+    }
+
+    int size() {
+        return this._size;
+    }
+
+    int generatedLine(int aIndex) {
+        return this._generatedLines[aIndex];
+    }
+
+    int generatedColumn(int aIndex) {
+        return this._generatedColumns[aIndex];
+    }
+
+    int source(int aIndex) {
+        return this._sources[aIndex];
+    }
+
+    int originalLine(int aIndex) {
+        return this._originalLines[aIndex];
+    }
+
+    int originalColumn(int aIndex) {
+        return this._originalColumns[aIndex];
+    }
+
+    int name(int aIndex) {
+        return this._names[aIndex];
     }
 
     /**
-     * Iterate through internal items. This method takes the same arguments that `Array.prototype.forEach` takes.
-     *
-     * NOTE: The order of the mappings is NOT guaranteed.
-     * 
-     * @return
+     * Sets the listener called with the generated line of each added mapping, and with each line whose mappings may be reordered by a sort.
      */
-    Stream<Mapping> unsortedForEach() {
-        return this._array.stream();
+    void setLineListener(IntConsumer aLineListener) {
+        this._lineListener = aLineListener;
     }
 
     /**
      * Add the given source mapping.
-     *
-     * @param Object
-     *            aMapping
      */
-    void add(Mapping aMapping) {
-        if (generatedPositionAfter(this._last, aMapping)) {
-            this._last = aMapping;
-            this._array.add(aMapping);
+    void add(int aGeneratedLine, int aGeneratedColumn, int aSource, int aOriginalLine, int aOriginalColumn, int aName) {
+        if (this._size == this._generatedLines.length) {
+            _grow(this._size + 1);
+        }
+        int i = this._size++;
+        this._generatedLines[i] = aGeneratedLine;
+        this._generatedColumns[i] = aGeneratedColumn;
+        this._sources[i] = aSource;
+        this._originalLines[i] = aOriginalLine;
+        this._originalColumns[i] = aOriginalColumn;
+        this._names[i] = aName;
+        if (this._lineListener != null) {
+            this._lineListener.accept(aGeneratedLine);
+        }
+
+        // Optimized for most common case: the mapping is after the last one with respect to generated position
+        if (aGeneratedLine > this._lastGeneratedLine) {
+            this._lastGeneratedLine = aGeneratedLine;
+            this._lastGeneratedColumn = aGeneratedColumn;
+            this._lastLineStart = i;
+        } else if (aGeneratedLine == this._lastGeneratedLine) {
+            if (aGeneratedColumn > this._lastGeneratedColumn) {
+                this._lastGeneratedColumn = aGeneratedColumn;
+            } else {
+                // Mappings at the same generated position are still in order, but
+                // they will need to be sorted if other mappings are not.
+                if (aGeneratedColumn < this._lastGeneratedColumn) {
+                    this._sorted = false;
+                }
+                if (this._unsortedLineCount == 0 || this._unsortedLineStarts[this._unsortedLineCount - 1] != this._lastLineStart) {
+                    if (this._unsortedLineCount == this._unsortedLineStarts.length) {
+                        this._unsortedLineStarts = Arrays.copyOf(this._unsortedLineStarts, this._unsortedLineCount * 2);
+                    }
+                    this._unsortedLineStarts[this._unsortedLineCount++] = this._lastLineStart;
+                }
+            }
         } else {
             this._sorted = false;
-            this._array.add(aMapping);
+            this._linesSorted = false;
         }
-    };
+    }
 
     /**
-     * Returns the flat, sorted array of mappings. The mappings are sorted by generated position.
-     *
-     * WARNING: This method returns internal data without copying, for performance. The return value must NOT be mutated, and should be treated as an
-     * immutable borrow. If you want to take ownership, you must make your own copy.
-     * 
-     * @return
+     * Add mappings which are all on the given generated line. The columns, sources, original positions and names are read in the given arrays,
+     * from aOffset and for aLength mappings. The original position of a mapping without source is stored as 0:0, as addMapping does.
      */
-    List<Mapping> toArray() {
-        if (!this._sorted) {
-            Collections.sort(this._array, Util::compareByGeneratedPositionsInflated);
-            this._sorted = true;
+    void addLine(int aGeneratedLine, int[] aGeneratedColumns, int[] aSources, int[] aOriginalLines, int[] aOriginalColumns, int[] aNames,
+            int aOffset, int aLength) {
+        if (this._size + aLength > this._generatedLines.length) {
+            _grow(this._size + aLength);
+        }
+        for (int i = aOffset; i < aOffset + aLength; i++) {
+            if (aSources[i] != -1) {
+                add(aGeneratedLine, aGeneratedColumns[i], aSources[i], aOriginalLines[i], aOriginalColumns[i], aNames[i]);
+            } else {
+                add(aGeneratedLine, aGeneratedColumns[i], -1, 0, 0, aNames[i]);
+            }
+        }
+    }
+
+    private void _grow(int aMinCapacity) {
+        int capacity = Math.max(this._generatedLines.length * 2, aMinCapacity);
+        this._generatedLines = Arrays.copyOf(this._generatedLines, capacity);
+        this._generatedColumns = Arrays.copyOf(this._generatedColumns, capacity);
+        this._sources = Arrays.copyOf(this._sources, capacity);
+        this._originalLines = Arrays.copyOf(this._originalLines, capacity);
+        this._originalColumns = Arrays.copyOf(this._originalColumns, capacity);
+        this._names = Arrays.copyOf(this._names, capacity);
+    }
+
+    /**
+     * Replace the source, the original position and the name of the mapping at the given index.
+     */
+    void setOriginal(int aIndex, int aSource, int aOriginalLine, int aOriginalColumn, int aName) {
+        this._sources[aIndex] = aSource;
+        this._originalLines[aIndex] = aOriginalLine;
+        this._originalColumns[aIndex] = aOriginalColumn;
+        this._names[aIndex] = aName;
+    }
+
+    /**
+     * Sort the mappings by generated position, if they were not added in order. Mappings at the same generated position are ordered by source,
+     * original position and name, like Util.compareByGeneratedPositionsInflated does, the sources and names being compared through the rank of
+     * their string among the given sources and names. Mappings at the same generated position on a line which was added in order are kept in the
+     * order they were added.
+     */
+    void sort(List<String> aSources, List<String> aNames) {
+        if (this._sorted) {
+            return;
+        }
+        Sorter sorter = new Sorter(aSources, aNames);
+        if (!this._linesSorted) {
+            if (!_sortLines(sorter)) {
+                // the lines are now in order, so the lines out of order can be found by scanning them
+                this._unsortedLineCount = 0;
+                int lineStart = 0;
+                for (int i = 1; i <= this._size; i++) {
+                    if (i == this._size || this._generatedLines[i] != this._generatedLines[lineStart]) {
+                        lineStart = i;
+                    } else if (this._generatedColumns[i] <= this._generatedColumns[i - 1]) {
+                        int end = lineStart;
+                        while (end < this._size && this._generatedLines[end] == this._generatedLines[lineStart]) {
+                            end++;
+                        }
+                        _sortRange(sorter, lineStart, end);
+                        i = end - 1;
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < this._unsortedLineCount; i++) {
+                int start = this._unsortedLineStarts[i];
+                int end = start;
+                while (end < this._size && this._generatedLines[end] == this._generatedLines[start]) {
+                    end++;
+                }
+                _sortRange(sorter, start, end);
+            }
+        }
+
+        this._sorted = true;
+        this._linesSorted = true;
+        this._unsortedLineCount = 0;
+        int last = this._size - 1;
+        this._lastGeneratedLine = this._generatedLines[last];
+        this._lastGeneratedColumn = this._generatedColumns[last];
+        this._lastLineStart = last;
+        while (this._lastLineStart > 0 && this._generatedLines[this._lastLineStart - 1] == this._lastGeneratedLine) {
+            this._lastLineStart--;
+        }
+    }
+
+    /**
+     * Puts the mappings in the order of their generated lines, keeping the order of the mappings of each line. This is a counting sort, unless the
+     * lines are too sparse for it, in which case the mappings are fully sorted and true is returned.
+     */
+    private boolean _sortLines(Sorter aSorter) {
+        int size = this._size;
+        int minLine = Integer.MAX_VALUE;
+        int maxLine = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minLine = Math.min(minLine, this._generatedLines[i]);
+            maxLine = Math.max(maxLine, this._generatedLines[i]);
+        }
+        int[] order = new int[size];
+        if ((long) maxLine - minLine > 2L * size + 1024) {
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = packPosition(this._generatedLines[i], this._generatedColumns[i]);
+                order[i] = i;
+            }
+            aSorter.sort(keys, order);
+            _permute(order, 0, size);
+            if (this._lineListener != null) {
+                for (int i = 0; i < size; i++) {
+                    this._lineListener.accept(this._generatedLines[i]);
+                }
+            }
+            return true;
+        }
+        int[] lineStarts = new int[maxLine - minLine + 2];
+        for (int i = 0; i < size; i++) {
+            lineStarts[this._generatedLines[i] - minLine + 1]++;
+        }
+        for (int i = 1; i < lineStarts.length; i++) {
+            lineStarts[i] += lineStarts[i - 1];
         }
-        return this._array;
-    };
+        for (int i = 0; i < size; i++) {
+            order[lineStarts[this._generatedLines[i] - minLine]++] = i;
+        }
+        _permute(order, 0, size);
+        return false;
+    }
+
+    private void _sortRange(Sorter aSorter, int aStart, int aEnd) {
+        if (this._lineListener != null) {
+            this._lineListener.accept(this._generatedLines[aStart]);
+        }
+        int length = aEnd - aStart;
+        long[] keys = new long[length];
+        int[] order = new int[length];
+        for (int i = 0; i < length; i++) {
+            keys[i] = packPosition(this._generatedLines[aStart + i], this._generatedColumns[aStart + i]);
+            order[i] = aStart + i;
+        }
+        aSorter.sort(keys, order);
+        _permute(order, aStart, length);
+    }
+
+    /**
+     * Moves the mappings at the indexes of aOrder to aStart and the following indexes.
+     */
+    private void _permute(int[] aOrder, int aStart, int aLength) {
+        int[] buffer = new int[aLength];
+        permute(this._generatedLines, aOrder, aStart, buffer);
+        permute(this._generatedColumns, aOrder, aStart, buffer);
+        permute(this._sources, aOrder, aStart, buffer);
+        permute(this._originalLines, aOrder, aStart, buffer);
+        permute(this._originalColumns, aOrder, aStart, buffer);
+        permute(this._names, aOrder, aStart, buffer);
+    }
+
+    /**
+     * Sort the mappings like {@link #sort(List, List)}, the mappings at the same generated position being ordered even on the lines which were
+     * added in order, so that the result doesn't depend on the order in which such mappings were added.
+     */
+    void sortAll(List<String> aSources, List<String> aNames) {
+        if (this._size > 1) {
+            this._sorted = false;
+        }
+        sort(aSources, aNames);
+    }
+
+    /**
+     * Remove all the mappings, and release the arrays which held them.
+     */
+    void clear() {
+        _init();
+    }
+
+    static long packPosition(int aLine, int aColumn) {
+        // the column is biased so that negative columns, which are invalid anyway, still sort first
+        return ((long) aLine << 32) + ((long) aColumn - Integer.MIN_VALUE);
+    }
+
+    static int unpackLine(long aPosition) {
+        return (int) (aPosition >> 32);
+    }
+
+    static int unpackColumn(long aPosition) {
+        return (int) ((aPosition & 0xFFFFFFFFL) + Integer.MIN_VALUE);
+    }
+
+    private static void permute(int[] aColumn, int[] aOrder, int aStart, int[] aBuffer) {
+        for (int i = 0; i < aBuffer.length; i++) {
+            aBuffer[i] = aColumn[aOrder[i]];
+        }
+        System.arraycopy(aBuffer, 0, aColumn, aStart, aBuffer.length);
+    }
+
+    /**
+     * A bottom-up merge sort of the packed positions, moving the indexes of the mappings along. Runs which are already in order are not merged, so
+     * mostly sorted mappings are sorted in almost linear time.
+     */
+    private final class Sorter {
+
+        private List<String> _sourceStrings;
+        private List<String> _nameStrings;
+        private int[] _sourceRanks;
+        private int[] _nameRanks;
+
+        Sorter(List<String> aSources, List<String> aNames) {
+            this._sourceStrings = aSources;
+            this._nameStrings = aNames;
+        }
+
+        void sort(long[] aKeys, int[] aOrder) {
+            int size = aKeys.length;
+            long[] keys = aKeys;
+            int[] order = aOrder;
+            long[] otherKeys = new long[size];
+            int[] otherOrder = new int[size];
+            for (int width = 1; width < size; width *= 2) {
+                for (int start = 0; start < size; start += 2 * width) {
+                    int middle = Math.min(start + width, size);
+                    int end = Math.min(start + 2 * width, size);
+                    if (middle == end || compare(keys[middle - 1], order[middle - 1], keys[middle], order[middle]) <= 0) {
+                        System.arraycopy(keys, start, otherKeys, start, end - start);
+                        System.arraycopy(order, start, otherOrder, start, end - start);
+                    } else {
+                        merge(keys, order, otherKeys, otherOrder, start, middle, end);
+                    }
+                }
+                long[] swapKeys = keys;
+                keys = otherKeys;
+                otherKeys = swapKeys;
+                int[] swapOrder = order;
+                order = otherOrder;
+                otherOrder = swapOrder;
+            }
+            if (order != aOrder) {
+                System.arraycopy(order, 0, aOrder, 0, size);
+            }
+        }
+
+        private void merge(long[] aKeys, int[] aOrder, long[] aDestKeys, int[] aDestOrder, int aStart, int aMiddle, int aEnd) {
+            int left = aStart;
+            int right = aMiddle;
+            for (int i = aStart; i < aEnd; i++) {
+                if (right >= aEnd || left < aMiddle && compare(aKeys[left], aOrder[left], aKeys[right], aOrder[right]) <= 0) {
+                    aDestKeys[i] = aKeys[left];
+                    aDestOrder[i] = aOrder[left++];
+                } else {
+                    aDestKeys[i] = aKeys[right];
+                    aDestOrder[i] = aOrder[right++];
+                }
+            }
+        }
+
+        private int compare(long aKey1, int aIndex1, long aKey2, int aIndex2) {
+            if (aKey1 != aKey2) {
+                return aKey1 < aKey2 ? -1 : 1;
+            }
+            int cmp = compareIds(_sources[aIndex1], _sources[aIndex2], true);
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = Integer.compare(_originalLines[aIndex1], _originalLines[aIndex2]);
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = Integer.compare(_originalColumns[aIndex1], _originalColumns[aIndex2]);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return compareIds(_names[aIndex1], _names[aIndex2], false);
+        }
+
+        private int compareIds(int aId1, int aId2, boolean aSources) {
+            if (aId1 == aId2) {
+                return 0;
+            }
+            if (aId1 == -1) {
+                return -1;
+            }
+            if (aId2 == -1) {
+                return 1;
+            }
+            int[] ranks = aSources ? sourceRanks() : nameRanks();
+            return Integer.compare(ranks[aId1], ranks[aId2]);
+        }
+
+        private int[] sourceRanks() {
+            if (this._sourceRanks == null) {
+                this._sourceRanks = ranks(this._sourceStrings);
+            }
+            return this._sourceRanks;
+        }
+
+        private int[] nameRanks() {
+            if (this._nameRanks == null) {
+                this._nameRanks = ranks(this._nameStrings);
+            }
+            return this._nameRanks;
+        }
+
+        private int[] ranks(List<String> aStrings) {
+            Integer[] ids = new Integer[aStrings.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = i;
+            }
+            Arrays.sort(ids, (id1, id2) -> aStrings.get(id1).compareTo(aStrings.get(id2)));
+            int[] ranks = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                ranks[ids[i]] = i;
+            }
+            return ranks;
+        }
+    }
 
 }
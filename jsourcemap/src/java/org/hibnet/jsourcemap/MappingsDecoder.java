@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+/**
+ * Decodes the base 64 VLQ "mappings" string of the source map format straight into a MappingList, without creating an object per mapping. While
+ * decoding, it checks whether the string is exactly what MappingsEncoder would encode back from the decoded mappings, so that it can be reused as is.
+ */
+class MappingsDecoder {
+
+    private final String _mappings;
+
+    private boolean _canonical = true;
+
+    MappingsDecoder(String aMappings) {
+        this._mappings = aMappings;
+    }
+
+    /**
+     * Decodes the mappings, the sources and names being renumbered through the given arrays, indexed by the ids of the encoded mappings.
+     */
+    MappingList decode(int[] aSourceIds, int[] aNameIds) {
+        String str = this._mappings;
+        int length = str.length();
+        int[] value = new int[1];
+        MappingList mappings = new MappingList();
+        int generatedLine = 1;
+        int generatedColumn = 0;
+        int source = 0;
+        int originalLine = 0;
+        int originalColumn = 0;
+        int name = 0;
+        // the length and the last position of the canonical encoding
+        int canonicalLength = 0;
+        int previousLine = 1;
+        int previousColumn = 0;
+        boolean lineStarted = false;
+        int index = 0;
+        while (index < length) {
+            char c = str.charAt(index);
+            if (c == ';') {
+                generatedLine++;
+                generatedColumn = 0;
+                index++;
+                continue;
+            }
+            if (c == ',') {
+                index++;
+                continue;
+            }
+            int start = index;
+            index = Base64VLQ.decode(str, index, value);
+            generatedColumn += value[0];
+            int segmentLength = Base64VLQ.encodedLength(value[0]);
+            int segmentSource = -1;
+            int segmentName = -1;
+            if (index < length && !_isSeparator(str.charAt(index))) {
+                index = Base64VLQ.decode(str, index, value);
+                source += value[0];
+                segmentLength += Base64VLQ.encodedLength(value[0]);
+                if (index >= length || _isSeparator(str.charAt(index))) {
+                    throw new Error("Found a source, but no line and column");
+                }
+                index = Base64VLQ.decode(str, index, value);
+                originalLine += value[0];
+                segmentLength += Base64VLQ.encodedLength(value[0]);
+                if (index >= length || _isSeparator(str.charAt(index))) {
+                    throw new Error("Found a source and line, but no column");
+                }
+                index = Base64VLQ.decode(str, index, value);
+                originalColumn += value[0];
+                segmentLength += Base64VLQ.encodedLength(value[0]);
+                if (index < length && !_isSeparator(str.charAt(index))) {
+                    index = Base64VLQ.decode(str, index, value);
+                    name += value[0];
+                    segmentLength += Base64VLQ.encodedLength(value[0]);
+                    segmentName = aNameIds[name];
+                }
+                segmentSource = aSourceIds[source];
+            }
+            // the values after the name are ignored, as by the consumers
+            while (index < length && !_isSeparator(str.charAt(index))) {
+                index = Base64VLQ.decode(str, index, value);
+            }
+            if (segmentSource != -1) {
+                // lines are stored 0-based in SourceMap spec version 3
+                mappings.add(generatedLine, generatedColumn, segmentSource, originalLine + 1, originalColumn, segmentName);
+            } else {
+                mappings.add(generatedLine, generatedColumn, -1, 0, 0, -1);
+            }
+
+            if (generatedLine != previousLine) {
+                canonicalLength += generatedLine - previousLine;
+                lineStarted = false;
+            } else if (lineStarted && generatedColumn <= previousColumn) {
+                // the encoder would have sorted the mappings, or skipped a repeated one
+                this._canonical = false;
+            }
+            if (lineStarted) {
+                canonicalLength++;
+            }
+            canonicalLength += segmentLength;
+            if (index - start != segmentLength) {
+                this._canonical = false;
+            }
+            lineStarted = true;
+            previousLine = generatedLine;
+            previousColumn = generatedColumn;
+        }
+        if (canonicalLength != length) {
+            this._canonical = false;
+        }
+        return mappings;
+    }
+
+    /**
+     * Whether the decoded string is the one MappingsEncoder would encode from the decoded mappings, given that their sources and names are not
+     * renumbered.
+     */
+    boolean isCanonical() {
+        return this._canonical;
+    }
+
+    private static boolean _isSeparator(char c) {
+        return c == ';' || c == ',';
+    }
+
+}
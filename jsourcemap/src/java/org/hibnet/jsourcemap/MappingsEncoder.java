@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes mappings, given in generated order, into the base 64 VLQ "mappings" string of the source map format. The encoded segments are accumulated
+ * in a growable char buffer. If an Appendable or an OutputStream is given, the buffer is flushed to it each time it is full, so the whole string
+ * never needs to be held in memory. As the mappings string is plain ASCII, writing it to an OutputStream is the same in any ASCII compatible
+ * charset.
+ */
+class MappingsEncoder {
+
+    private static final int FLUSH_SIZE = 8192;
+
+    private char[] _buffer;
+    private int _length;
+
+    private Appendable _appendable;
+    private OutputStream _outputStream;
+    private byte[] _bytes;
+
+    private int _previousGeneratedLine = 1;
+    private int _previousGeneratedColumn = 0;
+    private int _previousSource = 0;
+    private int _previousOriginalLine = 0;
+    private int _previousOriginalColumn = 0;
+    private int _previousName = 0;
+    private boolean _lineStarted = false;
+
+    MappingsEncoder() {
+        this._buffer = new char[64];
+    }
+
+    MappingsEncoder(Appendable aAppendable) {
+        this._buffer = new char[FLUSH_SIZE];
+        this._appendable = aAppendable;
+    }
+
+    MappingsEncoder(OutputStream aOutputStream) {
+        this._buffer = new char[FLUSH_SIZE];
+        this._outputStream = aOutputStream;
+    }
+
+    /**
+     * Sets the state the next segment is encoded relatively to, so that the mappings can be encoded by chunks starting at a line boundary: the
+     * previous generated line, and the previous source, 0-based original line, original column and name, as left by the mappings before the chunk.
+     */
+    void startAt(int aPreviousGeneratedLine, int aPreviousSource, int aPreviousOriginalLine, int aPreviousOriginalColumn, int aPreviousName) {
+        this._previousGeneratedLine = aPreviousGeneratedLine;
+        this._previousGeneratedColumn = 0;
+        this._previousSource = aPreviousSource;
+        this._previousOriginalLine = aPreviousOriginalLine;
+        this._previousOriginalColumn = aPreviousOriginalColumn;
+        this._previousName = aPreviousName;
+        this._lineStarted = false;
+    }
+
+    /**
+     * Encodes the next segment. Lines are 1-based, the source and the name are indexes in the sources and names arrays, -1 for none.
+     *
+     * @throws UncheckedIOException
+     *             if flushing to the underlying Appendable or OutputStream failed
+     */
+    void add(int aGeneratedLine, int aGeneratedColumn, int aSource, int aOriginalLine, int aOriginalColumn, int aName) {
+        // a segment is at most 5 values, plus the separators
+        _ensureCapacity(aGeneratedLine - this._previousGeneratedLine + 5 * Base64VLQ.MAX_ENCODED_LENGTH + 1);
+        if (aGeneratedLine != this._previousGeneratedLine) {
+            this._previousGeneratedColumn = 0;
+            while (this._previousGeneratedLine < aGeneratedLine) {
+                this._buffer[this._length++] = ';';
+                this._previousGeneratedLine++;
+            }
+            this._lineStarted = false;
+        }
+        if (this._lineStarted) {
+            this._buffer[this._length++] = ',';
+        }
+        this._lineStarted = true;
+
+        _encode(aGeneratedColumn - this._previousGeneratedColumn);
+        this._previousGeneratedColumn = aGeneratedColumn;
+
+        if (aSource != -1) {
+            _encode(aSource - this._previousSource);
+            this._previousSource = aSource;
+
+            // lines are stored 0-based in SourceMap spec version 3
+            _encode(aOriginalLine - 1 - this._previousOriginalLine);
+            this._previousOriginalLine = aOriginalLine - 1;
+
+            _encode(aOriginalColumn - this._previousOriginalColumn);
+            this._previousOriginalColumn = aOriginalColumn;
+
+            if (aName != -1) {
+                _encode(aName - this._previousName);
+                this._previousName = aName;
+            }
+        }
+    }
+
+    /**
+     * Appends segments already encoded, following the last added segment on its generated line, and sets the state they leave: the last source,
+     * 1-based original line, original column and name encoded so far.
+     */
+    void addEncoded(String aEncoded, int aStart, int aEnd, int aSource, int aOriginalLine, int aOriginalColumn, int aName) {
+        _ensureCapacity(aEnd - aStart);
+        aEncoded.getChars(aStart, aEnd, this._buffer, this._length);
+        this._length += aEnd - aStart;
+        this._previousSource = aSource;
+        this._previousOriginalLine = aOriginalLine - 1;
+        this._previousOriginalColumn = aOriginalColumn;
+        this._previousName = aName;
+    }
+
+    private void _encode(int aValue) {
+        this._length = Base64VLQ.encode(aValue, this._buffer, this._length);
+    }
+
+    private void _ensureCapacity(int aExtra) {
+        if (this._length + aExtra <= this._buffer.length) {
+            return;
+        }
+        if (this._appendable != null || this._outputStream != null) {
+            flush();
+            if (aExtra <= this._buffer.length) {
+                return;
+            }
+        }
+        this._buffer = Arrays.copyOf(this._buffer, Math.max(this._buffer.length * 2, this._length + aExtra));
+    }
+
+    /**
+     * Writes the buffered chars to the underlying Appendable or OutputStream, if any.
+     */
+    void flush() {
+        if (this._length == 0 || (this._appendable == null && this._outputStream == null)) {
+            return;
+        }
+        try {
+            if (this._outputStream != null) {
+                writeTo(this._outputStream);
+            } else {
+                writeTo(this._appendable);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this._length = 0;
+    }
+
+    /**
+     * Writes the buffered chars to the given Appendable, leaving the buffer untouched.
+     */
+    void writeTo(Appendable aAppendable) throws IOException {
+        if (aAppendable instanceof Writer) {
+            ((Writer) aAppendable).write(this._buffer, 0, this._length);
+        } else if (aAppendable instanceof StringBuilder) {
+            ((StringBuilder) aAppendable).append(this._buffer, 0, this._length);
+        } else {
+            aAppendable.append(CharBuffer.wrap(this._buffer, 0, this._length));
+        }
+    }
+
+    /**
+     * Writes the buffered chars as ASCII bytes to the given OutputStream, leaving the buffer untouched.
+     */
+    void writeTo(OutputStream aOutputStream) throws IOException {
+        if (this._bytes == null) {
+            this._bytes = new byte[FLUSH_SIZE];
+        }
+        for (int start = 0; start < this._length; start += this._bytes.length) {
+            int end = Math.min(this._length, start + this._bytes.length);
+            for (int i = start; i < end; i++) {
+                this._bytes[i - start] = (byte) this._buffer[i];
+            }
+            aOutputStream.write(this._bytes, 0, end - start);
+        }
+    }
+
+    /**
+     * Copies the buffered chars into the given array at the given offset, and returns the offset following them.
+     */
+    int copyTo(char[] aDest, int aOffset) {
+        System.arraycopy(this._buffer, 0, aDest, aOffset, this._length);
+        return aOffset + this._length;
+    }
+
+    /**
+     * The number of chars currently buffered.
+     */
+    int length() {
+        return this._length;
+    }
+
+    /**
+     * The buffered chars, which is the whole mappings string if there is no underlying Appendable nor OutputStream.
+     */
+    @Override
+    public String toString() {
+        return new String(this._buffer, 0, this._length);
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps the last serialization of the mappings of a generator along with where each generated line starts in it, so that serializing again after
+ * mappings were added only encodes the lines which got new mappings. The segments of a line after its first one are encoded relatively to the first
+ * one, so the first segment of each line is encoded again against the state left by the lines before, and the rest of the line is copied from the
+ * last serialization as long as the first segment leaves the same state as it did then.
+ * <p>
+ * The cache is notified of the lines which got new mappings, or whose mappings were reordered, as the line listener of the MappingList.
+ */
+class MappingsLineCache implements IntConsumer {
+
+    // the fields recorded for each line: the number of mappings, where the segments after the first one are in the serialization, the state left
+    // by the first segment, and the state left by the line
+    private static final int COUNT = 0;
+    private static final int TAIL_START = 1;
+    private static final int TAIL_END = 2;
+    private static final int BASE_SOURCE = 3;
+    private static final int BASE_ORIGINAL_LINE = 4;
+    private static final int BASE_ORIGINAL_COLUMN = 5;
+    private static final int BASE_NAME = 6;
+    private static final int SOURCE = 7;
+    private static final int ORIGINAL_LINE = 8;
+    private static final int ORIGINAL_COLUMN = 9;
+    private static final int NAME = 10;
+    private static final int LINE_FIELDS = 11;
+
+    private String _mappings;
+
+    // the fields of each line of the last serialization, the first line at index 0, none if the lines were too sparse to be cached
+    private int[] _lines = new int[0];
+    private int _lineCount = 0;
+
+    private final BitSet _changedLines = new BitSet();
+
+    // whether a mapping was added since the last serialization
+    private boolean _dirty = true;
+
+    /**
+     * Marks the given generated line as changed since the last serialization.
+     */
+    @Override
+    public void accept(int aGeneratedLine) {
+        this._dirty = true;
+        if (aGeneratedLine >= 1 && aGeneratedLine <= this._lineCount) {
+            this._changedLines.set(aGeneratedLine - 1);
+        }
+    }
+
+    /**
+     * Forgets the last serialization, as when the sources or names of the mappings were renumbered.
+     */
+    void invalidate() {
+        this._mappings = null;
+        this._lineCount = 0;
+        this._changedLines.clear();
+        this._dirty = true;
+    }
+
+    /**
+     * Serialize the given mappings, sorted by generated position, reusing the encoded lines of the last serialization which didn't change.
+     */
+    String serialize(MappingList aMappings) {
+        if (!this._dirty && this._mappings != null) {
+            return this._mappings;
+        }
+        int size = aMappings.size();
+        int lastLine = size == 0 ? 0 : aMappings.generatedLine(size - 1);
+        MappingsEncoder encoder = new MappingsEncoder();
+        if (size > 0 && (aMappings.generatedLine(0) < 1 || lastLine > 2L * size + 1024)) {
+            // too sparse to keep fields for each line
+            SourceMapGenerator._serializeMappings(aMappings, encoder, 0, size);
+            this._mappings = encoder.toString();
+            this._lineCount = 0;
+            this._changedLines.clear();
+            this._dirty = false;
+            return this._mappings;
+        }
+
+        int[] lines = new int[lastLine * LINE_FIELDS];
+        int source = 0;
+        int originalLine = 1;
+        int originalColumn = 0;
+        int name = 0;
+        int i = 0;
+        for (int line = 1; line <= lastLine; line++) {
+            int field = (line - 1) * LINE_FIELDS;
+            boolean unchanged = this._mappings != null && line <= this._lineCount && !this._changedLines.get(line - 1);
+            int end = i;
+            if (unchanged) {
+                end = i + this._lines[field + COUNT];
+            } else {
+                while (end < size && aMappings.generatedLine(end) == line) {
+                    end++;
+                }
+            }
+            lines[field + COUNT] = end - i;
+            if (end == i) {
+                continue;
+            }
+
+            SourceMapGenerator._serializeMappings(aMappings, encoder, i, i + 1);
+            if (aMappings.source(i) != -1) {
+                source = aMappings.source(i);
+                originalLine = aMappings.originalLine(i);
+                originalColumn = aMappings.originalColumn(i);
+                if (aMappings.name(i) != -1) {
+                    name = aMappings.name(i);
+                }
+            }
+            lines[field + BASE_SOURCE] = source;
+            lines[field + BASE_ORIGINAL_LINE] = originalLine;
+            lines[field + BASE_ORIGINAL_COLUMN] = originalColumn;
+            lines[field + BASE_NAME] = name;
+            lines[field + TAIL_START] = encoder.length();
+            if (unchanged && this._lines[field + BASE_SOURCE] == source && this._lines[field + BASE_ORIGINAL_LINE] == originalLine
+                    && this._lines[field + BASE_ORIGINAL_COLUMN] == originalColumn && this._lines[field + BASE_NAME] == name) {
+                source = this._lines[field + SOURCE];
+                originalLine = this._lines[field + ORIGINAL_LINE];
+                originalColumn = this._lines[field + ORIGINAL_COLUMN];
+                name = this._lines[field + NAME];
+                encoder.addEncoded(this._mappings, this._lines[field + TAIL_START], this._lines[field + TAIL_END], source, originalLine,
+                        originalColumn, name);
+            } else {
+                SourceMapGenerator._serializeMappings(aMappings, encoder, i + 1, end);
+                for (int j = i + 1; j < end; j++) {
+                    if (aMappings.source(j) != -1) {
+                        source = aMappings.source(j);
+                        originalLine = aMappings.originalLine(j);
+                        originalColumn = aMappings.originalColumn(j);
+                        if (aMappings.name(j) != -1) {
+                            name = aMappings.name(j);
+                        }
+                    }
+                }
+            }
+            lines[field + TAIL_END] = encoder.length();
+            lines[field + SOURCE] = source;
+            lines[field + ORIGINAL_LINE] = originalLine;
+            lines[field + ORIGINAL_COLUMN] = originalColumn;
+            lines[field + NAME] = name;
+            i = end;
+        }
+
+        this._mappings = encoder.toString();
+        this._lines = lines;
+        this._lineCount = lastLine;
+        this._changedLines.clear();
+        this._dirty = false;
+        return this._mappings;
+    }
+
+}
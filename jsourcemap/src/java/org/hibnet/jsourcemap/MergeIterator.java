@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+class MergeIterator<T> implements Iterator<T> {
+
+    private static final class Head<T> {
+        T element;
+        Iterator<? extends T> iterator;
+        int index;
+
+        Head(Iterator<? extends T> iterator, int index) {
+            this.element = iterator.next();
+            this.iterator = iterator;
+            this.index = index;
+        }
+    }
+
+    private PriorityQueue<Head<T>> _heads;
+
+    /**
+     * An iterator which merges several iterators, each of them sorted according to the given comparator, into one sorted iteration. Elements which
+     * are equal are iterated in the order of the iterators they come from, so merging is stable.
+     */
+    MergeIterator(List<? extends Iterator<? extends T>> aIterators, Comparator<? super T> aComparator) {
+        this._heads = new PriorityQueue<>(Math.max(1, aIterators.size()), (head1, head2) -> {
+            int cmp = aComparator.compare(head1.element, head2.element);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return head1.index - head2.index;
+        });
+        for (int i = 0; i < aIterators.size(); i++) {
+            Iterator<? extends T> iterator = aIterators.get(i);
+            if (iterator.hasNext()) {
+                this._heads.add(new Head<>(iterator, i));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !this._heads.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        Head<T> head = this._heads.poll();
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        T element = head.element;
+        if (head.iterator.hasNext()) {
+            // reuse the head for the next element of the same iterator
+            head.element = head.iterator.next();
+            this._heads.add(head);
+        }
+        return element;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+
+/**
+ * Loads the source maps of the sections of an indexed source map which are referenced by a "url" field rather than embedded in a "map" field.
+ * <p>
+ * A section is only loaded the first time a lookup falls into it, so only the sections which are actually needed are fetched and parsed.
+ * Implementations may be called concurrently for different urls.
+ */
+public interface SectionLoader {
+
+    /**
+     * Load the source map referenced by the url of a section.
+     *
+     * @param url
+     *            The url field of the section.
+     * @return the source map, never null
+     * @throws IOException
+     *             if the source map could not be read
+     */
+    SourceMap load(String url) throws IOException;
+
+}
@@ -0,0 +1,164 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * The content of a source, either held in memory or read only when the source map is serialized. Two contents are equal when they are the same
+ * string, the same file, or the same supplier, so that a generator keeps a single instance of identical contents.
+ */
+abstract class SourceContent {
+
+    // the number of sources of a generator having this content
+    int _references = 0;
+
+    static SourceContent of(String aContent) {
+        return new StringContent(aContent);
+    }
+
+    static SourceContent of(Path aPath, Charset aCharset) {
+        return new FileContent(aPath.toAbsolutePath().normalize(), aCharset);
+    }
+
+    static SourceContent of(Supplier<? extends CharSequence> aSupplier) {
+        return new SuppliedContent(aSupplier);
+    }
+
+    /**
+     * Reads the whole content.
+     */
+    abstract String read();
+
+    /**
+     * Writes the content as a JSON string, without keeping it in memory if it is deferred.
+     */
+    void writeTo(JsonWriter aWriter) throws IOException {
+        aWriter.string(read());
+    }
+
+    private static final class StringContent extends SourceContent {
+
+        private final String _content;
+
+        StringContent(String aContent) {
+            this._content = aContent;
+        }
+
+        @Override
+        String read() {
+            return this._content;
+        }
+
+        @Override
+        public int hashCode() {
+            return this._content.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StringContent && ((StringContent) obj)._content.equals(this._content);
+        }
+    }
+
+    private static final class FileContent extends SourceContent {
+
+        private final Path _path;
+
+        private final Charset _charset;
+
+        FileContent(Path aPath, Charset aCharset) {
+            this._path = aPath;
+            this._charset = aCharset;
+        }
+
+        @Override
+        String read() {
+            try {
+                return new String(Files.readAllBytes(this._path), this._charset);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read the source content " + this._path, e);
+            }
+        }
+
+        @Override
+        void writeTo(JsonWriter aWriter) throws IOException {
+            char[] chars = new char[8192];
+            aWriter.raw("\"");
+            // unlike Files.newBufferedReader, an InputStreamReader replaces malformed input as new String does
+            try (Reader reader = new InputStreamReader(Files.newInputStream(this._path), this._charset)) {
+                int read;
+                while ((read = reader.read(chars)) != -1) {
+                    aWriter.stringContent(chars, 0, read);
+                }
+            }
+            aWriter.endStringContent();
+            aWriter.raw("\"");
+        }
+
+        @Override
+        public int hashCode() {
+            return this._path.hashCode() * 31 + this._charset.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileContent)) {
+                return false;
+            }
+            FileContent other = (FileContent) obj;
+            return other._path.equals(this._path) && other._charset.equals(this._charset);
+        }
+    }
+
+    private static final class SuppliedContent extends SourceContent {
+
+        private final Supplier<? extends CharSequence> _supplier;
+
+        SuppliedContent(Supplier<? extends CharSequence> aSupplier) {
+            this._supplier = aSupplier;
+        }
+
+        @Override
+        String read() {
+            CharSequence content = this._supplier.get();
+            return content != null ? content.toString() : null;
+        }
+
+        @Override
+        void writeTo(JsonWriter aWriter) throws IOException {
+            aWriter.string(this._supplier.get());
+        }
+
+        @Override
+        public int hashCode() {
+            return this._supplier.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof SuppliedContent && ((SuppliedContent) obj)._supplier.equals(this._supplier);
+        }
+    }
+
+}
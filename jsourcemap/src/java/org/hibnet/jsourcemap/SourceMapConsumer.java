@@ -18,6 +18,7 @@ package org.hibnet.jsourcemap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.stream.Stream;
 
 import org.hibnet.jsourcemap.BinarySearch.Bias;
@@ -86,7 +87,47 @@ public abstract class SourceMapConsumer {
     }
 
     public static SourceMapConsumer create(SourceMap sourceMap) {
-        return sourceMap.sections != null ? new IndexedSourceMapConsumer(sourceMap) : new BasicSourceMapConsumer(sourceMap);
+        return create(sourceMap, null, null, 1);
+    }
+
+    /**
+     * Create a consumer which, if the source map is an indexed one, loads the sections referenced by a url with the given loader. A section is only
+     * loaded the first time a lookup falls into it.
+     */
+    public static SourceMapConsumer create(SourceMap sourceMap, SectionLoader loader) {
+        return create(sourceMap, loader, null, 1);
+    }
+
+    /**
+     * Create a consumer which, if the source map is an indexed one, parses the mappings of its sections in parallel.
+     *
+     * @param sourceMap
+     *            The source map to consume.
+     * @param executor
+     *            Optional. The executor on which the sections are parsed. If null, they are parsed sequentially by the calling thread.
+     * @param parallelism
+     *            The maximum number of sections parsed at the same time.
+     */
+    public static SourceMapConsumer create(SourceMap sourceMap, Executor executor, int parallelism) {
+        return create(sourceMap, null, executor, parallelism);
+    }
+
+    /**
+     * Create a consumer, specifying how the sections of an indexed source map are loaded and parsed. These parameters are ignored for source maps
+     * which are not indexed.
+     *
+     * @param sourceMap
+     *            The source map to consume.
+     * @param loader
+     *            Optional. The loader of the sections which are referenced by a url.
+     * @param executor
+     *            Optional. The executor on which the sections are parsed. If null, they are parsed sequentially by the calling thread.
+     * @param parallelism
+     *            The maximum number of sections parsed at the same time.
+     */
+    public static SourceMapConsumer create(SourceMap sourceMap, SectionLoader loader, Executor executor, int parallelism) {
+        return sourceMap.sections != null ? new IndexedSourceMapConsumer(sourceMap, loader, executor, parallelism)
+                : new BasicSourceMapConsumer(sourceMap);
     }
 
     public static SourceMapConsumer fromSourceMap(SourceMapGenerator aSourceMap) {
@@ -127,8 +168,11 @@ public abstract class SourceMapConsumer {
     // `_generatedMappings` is ordered by the generated positions.
     //
     // `_originalMappings` is ordered by the original positions.
+    //
+    // They are volatile so that a consumer can be queried from several threads:
+    // two threads may both parse the mappings, but none sees a list being built.
 
-    List<ParsedMapping> __generatedMappings = null;
+    volatile List<ParsedMapping> __generatedMappings = null;
 
     List<ParsedMapping> _generatedMappings() {
         if (this.__generatedMappings == null) {
@@ -137,7 +181,7 @@ public abstract class SourceMapConsumer {
         return this.__generatedMappings;
     }
 
-    List<ParsedMapping> __originalMappings = null;
+    volatile List<ParsedMapping> __originalMappings = null;
 
     List<ParsedMapping> _originalMappings() {
         if (this.__originalMappings == null) {
@@ -167,6 +211,18 @@ public abstract class SourceMapConsumer {
 
     public abstract OriginalPosition originalPositionFor(int line, int column, Bias bias);
 
+    /**
+     * Returns the original positions of the given generated positions, like originalPositionFor with the default bias. The positions are sorted by
+     * generated position, so that they can be looked up in one walk over the mappings.
+     */
+    OriginalPosition[] _originalPositionsFor(int[] aLines, int[] aColumns, int aLength) {
+        OriginalPosition[] positions = new OriginalPosition[aLength];
+        for (int i = 0; i < aLength; i++) {
+            positions[i] = originalPositionFor(aLines[i], aColumns[i], null);
+        }
+        return positions;
+    }
+
     public abstract boolean hasContentsOfAllSources();
 
     public abstract GeneratedPosition generatedPositionFor(String source, int line, int column, Bias bias);
@@ -15,19 +15,47 @@
  */
 package org.hibnet.jsourcemap;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class SourceMapGenerator {
 
+    // The minimum number of mappings in a chunk serialized in parallel
+    private static final int MIN_CHUNK_SIZE = 16384;
+
     String _file;
     String _sourceRoot;
     ArraySet<String> _sources;
     ArraySet<String> _names;
     MappingList _mappings;
-    Map<String, String> _sourcesContents;
+    Map<String, SourceContent> _sourcesContents;
+
+    // the distinct contents of _sourcesContents
+    private Map<SourceContent, SourceContent> _sharedContents;
+
+    // the raw mappings of the source map this generator was created from, as long as they are the serialization of _mappings
+    String _rawMappings;
+
+    // the serialization of _mappings kept per generated line, if incremental serialization is enabled
+    MappingsLineCache _lineCache;
 
     /**
      * An instance of the SourceMapGenerator represents a source map which is being built incrementally. You may pass an object with the following
@@ -55,6 +83,9 @@ public class SourceMapGenerator {
      *            The SourceMap.
      */
     public static SourceMapGenerator fromSourceMap(SourceMapConsumer aSourceMapConsumer) {
+        if (aSourceMapConsumer instanceof BasicSourceMapConsumer && aSourceMapConsumer._mappings != null) {
+            return _fromSourceMap((BasicSourceMapConsumer) aSourceMapConsumer);
+        }
         String sourceRoot = aSourceMapConsumer.sourceRoot;
         SourceMapGenerator generator = new SourceMapGenerator(aSourceMapConsumer.file, sourceRoot);
         aSourceMapConsumer.eachMapping().forEach(mapping -> {
@@ -80,6 +111,109 @@ public class SourceMapGenerator {
         return generator;
     }
 
+    /**
+     * Creates a SourceMapGenerator from a BasicSourceMapConsumer without going through its parsed mappings: the raw mappings are decoded straight
+     * into the columns of the generator, and the sources and names are numbered by their first use, as addMapping would do. When the numbering is
+     * unchanged and the raw mappings are exactly what the generator would serialize, they are kept and serialized as is until the generator is
+     * modified.
+     */
+    private static SourceMapGenerator _fromSourceMap(BasicSourceMapConsumer aSourceMapConsumer) {
+        String sourceRoot = aSourceMapConsumer.sourceRoot;
+        SourceMapGenerator generator = new SourceMapGenerator(aSourceMapConsumer.file, sourceRoot);
+
+        // The sources as eachMapping gives them and addMapping registers them, the duplicates being merged
+        List<String> consumerSources = aSourceMapConsumer._sources.toArray();
+        List<String> consumerNames = aSourceMapConsumer._names.toArray();
+        Function<String, String> relative = sourceRoot != null ? Util.relativeTo(sourceRoot) : null;
+        ArraySet<String> sources = new ArraySet<>();
+        int[] sourceIds = new int[consumerSources.size()];
+        String[] sourceFiles = new String[consumerSources.size()];
+        for (int i = 0; i < sourceIds.length; i++) {
+            String source = consumerSources.get(i);
+            if (relative != null) {
+                source = relative.apply(Util.join(sourceRoot, source));
+            }
+            sourceFiles[i] = source;
+            sourceIds[i] = _intern(sources, source);
+        }
+        ArraySet<String> names = new ArraySet<>();
+        int[] nameIds = new int[consumerNames.size()];
+        for (int i = 0; i < nameIds.length; i++) {
+            nameIds[i] = _intern(names, consumerNames.get(i));
+        }
+
+        MappingsDecoder decoder = new MappingsDecoder(aSourceMapConsumer._mappings);
+        MappingList mappings = decoder.decode(sourceIds, nameIds);
+        mappings.sort(sources.toArray(), names.toArray());
+
+        int[] usedSourceIds = _numberByFirstUse(mappings, true, sources.size());
+        int[] usedNameIds = _numberByFirstUse(mappings, false, names.size());
+        boolean renumbered = !_isIdentity(sourceIds, usedSourceIds) || !_isIdentity(nameIds, usedNameIds);
+        if (renumbered) {
+            for (int i = 0, len = mappings.size(); i < len; i++) {
+                int source = mappings.source(i);
+                int name = mappings.name(i);
+                mappings.setOriginal(i, source != -1 ? usedSourceIds[source] : -1, mappings.originalLine(i), mappings.originalColumn(i),
+                        name != -1 ? usedNameIds[name] : -1);
+            }
+        }
+        generator._sources = ArraySet.fromArray(_used(sources.toArray(), usedSourceIds), false);
+        generator._names = ArraySet.fromArray(_used(names.toArray(), usedNameIds), false);
+        generator._mappings = mappings;
+        if (!renumbered && decoder.isCanonical()) {
+            generator._rawMappings = aSourceMapConsumer._mappings;
+        }
+
+        List<String> sourcesContent = aSourceMapConsumer.sourcesContent;
+        if (sourcesContent != null) {
+            for (int i = 0; i < sourceFiles.length && i < sourcesContent.size(); i++) {
+                // A duplicated source has the content of its first occurrence, as given by sourceContentFor
+                String content = sourcesContent.get(aSourceMapConsumer._sources.indexOf(consumerSources.get(i)));
+                if (content != null) {
+                    generator._putSourceContent(sourceFiles[i], SourceContent.of(content));
+                }
+            }
+        }
+        return generator;
+    }
+
+    /**
+     * Numbers the sources, or the names, by their first use in the mappings. The ones not used are numbered -1.
+     */
+    private static int[] _numberByFirstUse(MappingList aMappings, boolean aSources, int aCount) {
+        int[] ids = new int[aCount];
+        Arrays.fill(ids, -1);
+        int count = 0;
+        for (int i = 0, len = aMappings.size(); i < len && count < aCount; i++) {
+            int id = aSources ? aMappings.source(i) : aMappings.name(i);
+            if (id != -1 && ids[id] == -1) {
+                ids[id] = count++;
+            }
+        }
+        return ids;
+    }
+
+    private static boolean _isIdentity(int[] aIds, int[] aNewIds) {
+        for (int i = 0; i < aIds.length; i++) {
+            if (aNewIds[aIds[i]] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> _used(List<String> aValues, int[] aIds) {
+        String[] used = new String[aValues.size()];
+        int count = 0;
+        for (int i = 0; i < aIds.length; i++) {
+            if (aIds[i] != -1) {
+                used[aIds[i]] = aValues.get(i);
+                count++;
+            }
+        }
+        return Arrays.asList(used).subList(0, count);
+    }
+
     /**
      * Add a single mapping from original source line and column to the generated source's line and column for this source map being created. The
      * mapping object should have the following properties:
@@ -95,6 +229,7 @@ public class SourceMapGenerator {
         Position original = aArgs.original;
         String source = aArgs.source;
         String name = aArgs.name;
+        this._rawMappings = null;
 
         if (source != null && !this._sources.has(source)) {
             _sources.add(source, false);
@@ -102,33 +237,146 @@ public class SourceMapGenerator {
         if (name != null && !this._names.has(name)) {
             _names.add(name, false);
         }
-        _mappings.add(new Mapping(generated, original, source, name));
+        if (source != null) {
+            _mappings.add(generated.line, generated.column, this._sources.indexOf(source), original.line, original.column,
+                    name != null ? this._names.indexOf(name) : -1);
+        } else {
+            _mappings.add(generated.line, generated.column, -1, 0, 0, name != null ? this._names.indexOf(name) : -1);
+        }
+    }
+
+    /**
+     * Register a source file, if not already registered, and return its index. The index is the source id expected by
+     * {@link #addMappings(int[], int[], int[], int[], int[], int[], int, int)}. It stays valid until applySourceMap, which renumbers the sources.
+     */
+    public int addSource(String aSource) {
+        if (aSource == null) {
+            throw new RuntimeException("The source must not be null.");
+        }
+        return _intern(this._sources, aSource);
+    }
+
+    /**
+     * Register an original token name, if not already registered, and return its index. The index is the name id expected by
+     * {@link #addMappings(int[], int[], int[], int[], int[], int[], int, int)}. It stays valid until applySourceMap, which renumbers the names.
+     */
+    public int addName(String aName) {
+        if (aName == null) {
+            throw new RuntimeException("The name must not be null.");
+        }
+        return _intern(this._names, aName);
+    }
+
+    /**
+     * Add several mappings at once, read from parallel arrays, from aOffset and for aLength mappings. Lines are 1-based and columns 0-based, like
+     * the positions of {@link #addMapping(Mapping)}. Sources and names are the ids returned by {@link #addSource(String)} and
+     * {@link #addName(String)}, or -1 for none; the original position of a mapping without source is ignored.
+     */
+    public void addMappings(int[] aGeneratedLines, int[] aGeneratedColumns, int[] aSources, int[] aOriginalLines, int[] aOriginalColumns,
+            int[] aNames, int aOffset, int aLength) {
+        _checkIds(aSources, aNames, aOffset, aLength);
+        this._rawMappings = null;
+        int end = aOffset + aLength;
+        int start = aOffset;
+        while (start < end) {
+            // append the mappings line by line
+            int line = aGeneratedLines[start];
+            int lineEnd = start + 1;
+            while (lineEnd < end && aGeneratedLines[lineEnd] == line) {
+                lineEnd++;
+            }
+            _mappings.addLine(line, aGeneratedColumns, aSources, aOriginalLines, aOriginalColumns, aNames, start, lineEnd - start);
+            start = lineEnd;
+        }
+    }
+
+    void _checkIds(int[] aSources, int[] aNames, int aOffset, int aLength) {
+        _checkIds(aSources, aNames, aOffset, aLength, this._sources.size(), this._names.size());
+    }
+
+    static void _checkIds(int[] aSources, int[] aNames, int aOffset, int aLength, int sourceCount, int nameCount) {
+        for (int i = aOffset; i < aOffset + aLength; i++) {
+            if (aSources[i] < -1 || aSources[i] >= sourceCount) {
+                throw new RuntimeException("Unknown source id: " + aSources[i]);
+            }
+            if (aNames[i] < -1 || aNames[i] >= nameCount) {
+                throw new RuntimeException("Unknown name id: " + aNames[i]);
+            }
+        }
     }
 
     /**
      * Set the source content for a source file.
      */
     public void setSourceContent(String aSourceFile, String aSourceContent) {
+        _setSourceContent(aSourceFile, aSourceContent != null ? SourceContent.of(aSourceContent) : null);
+    }
+
+    /**
+     * Set the source content for a source file, to be read from a file only when the source map is externalized. The file is read each time the
+     * source map is externalized, and its content is not kept in memory.
+     *
+     * @param aSourceFile
+     *            The source file.
+     * @param aPath
+     *            The file of the content.
+     * @param aCharset
+     *            The charset of the file.
+     */
+    public void setSourceContent(String aSourceFile, Path aPath, Charset aCharset) {
+        _setSourceContent(aSourceFile, SourceContent.of(aPath, aCharset));
+    }
+
+    /**
+     * Set the source content for a source file, to be supplied only when the source map is externalized. The supplier is called each time the
+     * source map is externalized, and the content it supplies is not kept by the generator.
+     *
+     * @param aSourceFile
+     *            The source file.
+     * @param aSupplier
+     *            The supplier of the content. It may supply null if the source has no content.
+     */
+    public void setDeferredSourceContent(String aSourceFile, Supplier<? extends CharSequence> aSupplier) {
+        _setSourceContent(aSourceFile, SourceContent.of(aSupplier));
+    }
+
+    private void _setSourceContent(String aSourceFile, SourceContent aSourceContent) {
         String source = aSourceFile;
         if (this._sourceRoot != null) {
             source = Util.relative(this._sourceRoot, source);
         }
+        _putSourceContent(source, aSourceContent);
+    }
 
+    private void _putSourceContent(String aSource, SourceContent aSourceContent) {
+        SourceContent previous = null;
         if (aSourceContent != null) {
             // Add the source content to the _sourcesContents map.
             // Create a new _sourcesContents map if the property is null.
             if (this._sourcesContents == null) {
                 this._sourcesContents = new HashMap<>();
+                this._sharedContents = new HashMap<>();
+            }
+            // Identical contents are shared
+            SourceContent content = this._sharedContents.putIfAbsent(aSourceContent, aSourceContent);
+            if (content == null) {
+                content = aSourceContent;
             }
-            this._sourcesContents.put(source, aSourceContent);
+            content._references++;
+            previous = this._sourcesContents.put(aSource, content);
         } else if (this._sourcesContents != null) {
             // Remove the source file from the _sourcesContents map.
             // If the _sourcesContents map is empty, set the property to null.
-            this._sourcesContents.remove(source);
+            previous = this._sourcesContents.remove(aSource);
             if (this._sourcesContents.isEmpty()) {
                 this._sourcesContents = null;
+                this._sharedContents = null;
+                return;
             }
         }
+        if (previous != null && --previous._references == 0) {
+            this._sharedContents.remove(previous);
+        }
     }
 
     /**
@@ -159,47 +407,318 @@ public class SourceMapGenerator {
         if (sourceRoot != null) {
             sourceFile = Util.relative(sourceRoot, sourceFile);
         }
+        SourceMapConsumer[] consumers = new SourceMapConsumer[this._sources.size()];
+        String[] sourceMapPaths = new String[this._sources.size()];
+        if (this._sources.has(sourceFile)) {
+            consumers[this._sources.indexOf(sourceFile)] = aSourceMapConsumer;
+            sourceMapPaths[this._sources.indexOf(sourceFile)] = aSourceMapPath;
+        }
+        _applySourceMapsBySource(consumers, sourceMapPaths);
+
+        _copySourcesContent(aSourceMapConsumer, aSourceMapPath);
+    }
+
+    /**
+     * Applies the source maps of many source files at once, as applySourceMap would do for each of them, but rewriting the mappings in a single
+     * pass and numbering the sources and names again only once. A mapping is rewritten by the source map of its own source only: the sources the
+     * applied source maps map to are not looked up again. The contents of the sources of the applied source maps are copied, but a source map
+     * keyed by a file which is not a source of this generator is ignored.
+     *
+     * @param aSourceMapConsumers
+     *            The source maps to apply, keyed by the source file they are applied to. If absolute, the source files are made relative to the
+     *            sourceRoot, as the aSourceFile of applySourceMap.
+     */
+    public void applySourceMaps(Map<String, SourceMapConsumer> aSourceMapConsumers) {
+        Map<String, SourceMapConsumer> consumers = aSourceMapConsumers;
+        if (this._sourceRoot != null) {
+            Function<String, String> relative = Util.relativeTo(this._sourceRoot);
+            consumers = new HashMap<>();
+            for (Map.Entry<String, SourceMapConsumer> entry : aSourceMapConsumers.entrySet()) {
+                consumers.put(relative.apply(entry.getKey()), entry.getValue());
+            }
+        }
+        applySourceMaps(consumers::get, null);
+    }
+
+    /**
+     * Applies the source maps of many source files at once, like {@link #applySourceMaps(Map)}, the source maps being resolved by a function.
+     *
+     * @param aResolver
+     *            Called once with each source of this generator, relative to the sourceRoot, and returning the source map to apply to it, or null if
+     *            there is none.
+     * @param aSourceMapPaths
+     *            Optional. Called with each source which has a source map to apply, and returning the dirname of the path to that source map, as the
+     *            aSourceMapPath of applySourceMap.
+     */
+    public void applySourceMaps(Function<String, SourceMapConsumer> aResolver, Function<String, String> aSourceMapPaths) {
+        SourceMapConsumer[] consumers = new SourceMapConsumer[this._sources.size()];
+        String[] sourceMapPaths = new String[this._sources.size()];
+        for (int source = 0; source < consumers.length; source++) {
+            consumers[source] = aResolver.apply(this._sources.at(source));
+            if (consumers[source] != null && aSourceMapPaths != null) {
+                sourceMapPaths[source] = aSourceMapPaths.apply(this._sources.at(source));
+            }
+        }
+        _applySourceMapsBySource(consumers, sourceMapPaths);
+
+        // the contents of a source map applied to several sources with the same path are copied once
+        Map<SourceMapConsumer, List<String>> copied = new IdentityHashMap<>();
+        for (int source = 0; source < consumers.length; source++) {
+            if (consumers[source] == null) {
+                continue;
+            }
+            List<String> paths = copied.computeIfAbsent(consumers[source], consumer -> new ArrayList<>(1));
+            if (!paths.contains(sourceMapPaths[source])) {
+                paths.add(sourceMapPaths[source]);
+                _copySourcesContent(consumers[source], sourceMapPaths[source]);
+            }
+        }
+    }
+
+    /**
+     * Rewrites the mappings through the source map of their source, given by the id of the source, if any, and numbers the sources and names again
+     * by their first use in the mappings.
+     */
+    private void _applySourceMapsBySource(SourceMapConsumer[] aConsumers, String[] aSourceMapPaths) {
+        this._rawMappings = null;
+        if (this._lineCache != null) {
+            this._lineCache.invalidate();
+        }
+        MappingList mappings = this._mappings;
+        int size = mappings.size();
+
+        // Group the original positions of the mappings to rewrite by source, the positions of a source being in [starts[source], ends[source])
+        int[] starts = new int[aConsumers.length + 1];
+        for (int i = 0; i < size; i++) {
+            int source = mappings.source(i);
+            if (source != -1 && aConsumers[source] != null) {
+                starts[source + 1]++;
+            }
+        }
+        for (int source = 0; source < aConsumers.length; source++) {
+            starts[source + 1] += starts[source];
+        }
+        long[] positions = new long[starts[aConsumers.length]];
+        int[] ends = Arrays.copyOf(starts, aConsumers.length);
+        for (int i = 0; i < size; i++) {
+            int source = mappings.source(i);
+            if (source != -1 && aConsumers[source] != null) {
+                positions[ends[source]++] = MappingList.packPosition(mappings.originalLine(i), mappings.originalColumn(i));
+            }
+        }
+
+        // Look up the distinct positions of each source at once, sorted so that its source map is walked only once.
+        OriginalPosition[][] originals = new OriginalPosition[aConsumers.length][];
+        for (int source = 0; source < aConsumers.length; source++) {
+            if (aConsumers[source] == null) {
+                continue;
+            }
+            Arrays.sort(positions, starts[source], ends[source]);
+            int distinct = 0;
+            for (int i = starts[source]; i < ends[source]; i++) {
+                if (distinct == 0 || positions[i] != positions[starts[source] + distinct - 1]) {
+                    positions[starts[source] + distinct++] = positions[i];
+                }
+            }
+            ends[source] = starts[source] + distinct;
+            int[] lines = new int[distinct];
+            int[] columns = new int[distinct];
+            for (int i = 0; i < distinct; i++) {
+                lines[i] = MappingList.unpackLine(positions[starts[source] + i]);
+                columns[i] = MappingList.unpackColumn(positions[starts[source] + i]);
+            }
+            originals[source] = aConsumers[source]._originalPositionsFor(lines, columns, distinct);
+        }
+
         // Applying the SourceMap can add and remove items from the sources and
         // the names array.
         ArraySet<String> newSources = new ArraySet<>();
         ArraySet<String> newNames = new ArraySet<>();
 
-        final String f_sourceFile = sourceFile;
-        // Find mappings for the "sourceFile"
-        this._mappings.unsortedForEach().forEach(mapping -> {
-            if (mapping.source.equals(f_sourceFile) && mapping.original != null) {
+        // The sources of the applied source maps are rewritten once for each source map path
+        Map<String, Map<String, String>> rewrittenSources = new HashMap<>();
+        Function<String, String> relative = this._sourceRoot != null ? Util.relativeTo(this._sourceRoot) : null;
+        for (int i = 0; i < size; i++) {
+            int sourceId = mappings.source(i);
+            String source = sourceId != -1 ? this._sources.at(sourceId) : null;
+            String name = mappings.name(i) != -1 ? this._names.at(mappings.name(i)) : null;
+            if (sourceId != -1 && aConsumers[sourceId] != null) {
                 // Check if it can be mapped by the source map, then update the mapping.
-                OriginalPosition original = aSourceMapConsumer.originalPositionFor(mapping.original.line, mapping.original.column, null);
+                long position = MappingList.packPosition(mappings.originalLine(i), mappings.originalColumn(i));
+                OriginalPosition original = originals[sourceId][Arrays.binarySearch(positions, starts[sourceId], ends[sourceId], position)
+                        - starts[sourceId]];
                 if (original.source != null) {
                     // Copy mapping
-                    mapping.source = original.source;
-                    if (aSourceMapPath != null) {
-                        mapping.source = Util.join(aSourceMapPath, mapping.source);
-                    }
-                    if (sourceRoot != null) {
-                        mapping.source = Util.relative(sourceRoot, mapping.source);
-                    }
-                    mapping.original.line = original.line;
-                    mapping.original.column = original.column;
+                    String sourceMapPath = aSourceMapPaths[sourceId];
+                    source = rewrittenSources.computeIfAbsent(sourceMapPath, path -> new HashMap<>()).computeIfAbsent(original.source,
+                            originalSource -> {
+                                String rewritten = originalSource;
+                                if (sourceMapPath != null) {
+                                    rewritten = Util.join(sourceMapPath, rewritten);
+                                }
+                                if (relative != null) {
+                                    rewritten = relative.apply(rewritten);
+                                }
+                                return rewritten;
+                            });
                     if (original.name != null) {
-                        mapping.name = original.name;
+                        name = original.name;
                     }
+                    mappings.setOriginal(i, _intern(newSources, source), original.line, original.column, _intern(newNames, name));
+                    continue;
                 }
             }
+            mappings.setOriginal(i, _intern(newSources, source), mappings.originalLine(i), mappings.originalColumn(i), _intern(newNames, name));
+        }
+        this._sources = newSources;
+        this._names = newNames;
+    }
 
-            String source = mapping.source;
-            if (source != null && !newSources.has(source)) {
-                newSources.add(source, false);
+    /**
+     * Applies the given source maps in order, as successive calls to applySourceMap without source file nor source map path would do, but without
+     * renumbering the sources and names in between: the mappings are split by generated lines in chunks, possibly resolved in parallel on the
+     * executor, and each chunk goes through all the source maps before its sources and names are interned again.
+     */
+    void _applySourceMaps(List<SourceMapConsumer> aSourceMapConsumers, Executor aExecutor, int aParallelism) {
+        if (aParallelism < 1) {
+            throw new RuntimeException("Parallelism must be at least 1, got " + aParallelism);
+        }
+        if (aSourceMapConsumers.isEmpty()) {
+            return;
+        }
+        Function<String, String> relative = this._sourceRoot != null ? Util.relativeTo(this._sourceRoot) : null;
+        String[] sourceFiles = new String[aSourceMapConsumers.size()];
+        for (int k = 0; k < sourceFiles.length; k++) {
+            SourceMapConsumer consumer = aSourceMapConsumers.get(k);
+            if (consumer.file == null) {
+                throw new RuntimeException("SourceMapGenerator.prototype.applySourceMap requires either an explicit source file, "
+                        + "or the source map's \"file\" property. Both were omitted.");
             }
+            // Make "sourceFile" relative if an absolute Url is passed.
+            sourceFiles[k] = relative != null ? relative.apply(consumer.file) : consumer.file;
+        }
+        this._rawMappings = null;
+        if (this._lineCache != null) {
+            this._lineCache.invalidate();
+        }
 
-            String name = mapping.name;
-            if (name != null && !newNames.has(name)) {
-                newNames.add(name, false);
+        MappingList mappings = _sortedMappings();
+        int size = mappings.size();
+        int nbChunks = aExecutor == null ? 1 : Math.max(1, Math.min(aParallelism * 4, size / MIN_CHUNK_SIZE));
+        List<AppliedChunk> chunks = new ArrayList<>();
+        for (int[] bound : _lineChunks(mappings, nbChunks)) {
+            chunks.add(new AppliedChunk(mappings, bound[0], bound[1], this._sources, this._names));
+        }
+        if (chunks.size() <= 1) {
+            for (AppliedChunk chunk : chunks) {
+                chunk.apply(aSourceMapConsumers, sourceFiles, relative);
             }
-        });
+        } else {
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[chunks.size()];
+            for (int chunk = 0; chunk < tasks.length; chunk++) {
+                AppliedChunk appliedChunk = chunks.get(chunk);
+                tasks[chunk] = CompletableFuture.runAsync(() -> appliedChunk.apply(aSourceMapConsumers, sourceFiles, relative), aExecutor);
+            }
+            _join(tasks);
+        }
+
+        // The sources and names are numbered by their first use, as applySourceMap does
+        ArraySet<String> newSources = new ArraySet<>();
+        ArraySet<String> newNames = new ArraySet<>();
+        for (AppliedChunk chunk : chunks) {
+            for (int i = chunk._start; i < chunk._end; i++) {
+                int j = i - chunk._start;
+                mappings.setOriginal(i, _intern(newSources, chunk._sources[j]), chunk._originalLines[j], chunk._originalColumns[j],
+                        _intern(newNames, chunk._names[j]));
+            }
+        }
         this._sources = newSources;
         this._names = newNames;
 
+        for (SourceMapConsumer consumer : aSourceMapConsumers) {
+            _copySourcesContent(consumer, null);
+        }
+    }
+
+    /**
+     * The original positions of a chunk of the mappings being applied source maps, the sources and names being held as strings.
+     */
+    private static final class AppliedChunk {
+
+        private final int _start;
+        private final int _end;
+        private final String[] _sources;
+        private final int[] _originalLines;
+        private final int[] _originalColumns;
+        private final String[] _names;
+
+        AppliedChunk(MappingList aMappings, int aStart, int aEnd, ArraySet<String> aSources, ArraySet<String> aNames) {
+            this._start = aStart;
+            this._end = aEnd;
+            this._sources = new String[aEnd - aStart];
+            this._originalLines = new int[aEnd - aStart];
+            this._originalColumns = new int[aEnd - aStart];
+            this._names = new String[aEnd - aStart];
+            for (int i = aStart; i < aEnd; i++) {
+                int j = i - aStart;
+                this._sources[j] = aMappings.source(i) != -1 ? aSources.at(aMappings.source(i)) : null;
+                this._originalLines[j] = aMappings.originalLine(i);
+                this._originalColumns[j] = aMappings.originalColumn(i);
+                this._names[j] = aMappings.name(i) != -1 ? aNames.at(aMappings.name(i)) : null;
+            }
+        }
+
+        void apply(List<SourceMapConsumer> aSourceMapConsumers, String[] aSourceFiles, Function<String, String> aRelative) {
+            int length = this._end - this._start;
+            long[] positions = new long[length];
+            // the sources of the applied source maps are made relative once each
+            Map<String, String> relativeSources = new HashMap<>();
+            for (int k = 0; k < aSourceFiles.length; k++) {
+                String sourceFile = aSourceFiles[k];
+                int count = 0;
+                for (int j = 0; j < length; j++) {
+                    if (sourceFile.equals(this._sources[j])) {
+                        positions[count++] = MappingList.packPosition(this._originalLines[j], this._originalColumns[j]);
+                    }
+                }
+                if (count == 0) {
+                    continue;
+                }
+                Arrays.sort(positions, 0, count);
+                int distinct = 0;
+                for (int i = 0; i < count; i++) {
+                    if (distinct == 0 || positions[i] != positions[distinct - 1]) {
+                        positions[distinct++] = positions[i];
+                    }
+                }
+                int[] lines = new int[distinct];
+                int[] columns = new int[distinct];
+                for (int i = 0; i < distinct; i++) {
+                    lines[i] = MappingList.unpackLine(positions[i]);
+                    columns[i] = MappingList.unpackColumn(positions[i]);
+                }
+                OriginalPosition[] originals = aSourceMapConsumers.get(k)._originalPositionsFor(lines, columns, distinct);
+                for (int j = 0; j < length; j++) {
+                    if (!sourceFile.equals(this._sources[j])) {
+                        continue;
+                    }
+                    long position = MappingList.packPosition(this._originalLines[j], this._originalColumns[j]);
+                    OriginalPosition original = originals[Arrays.binarySearch(positions, 0, distinct, position)];
+                    if (original.source != null) {
+                        this._sources[j] = aRelative == null ? original.source : relativeSources.computeIfAbsent(original.source, aRelative);
+                        this._originalLines[j] = original.line;
+                        this._originalColumns[j] = original.column;
+                        if (original.name != null) {
+                            this._names[j] = original.name;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void _copySourcesContent(SourceMapConsumer aSourceMapConsumer, String aSourceMapPath) {
+        String sourceRoot = this._sourceRoot;
         // Copy sourcesContents of applied map.
         aSourceMapConsumer.sources().stream().forEach(source -> {
             String content = aSourceMapConsumer.sourceContentFor(source, null);
@@ -216,85 +735,385 @@ public class SourceMapGenerator {
     }
 
     /**
-     * Serialize the accumulated mappings in to the stream of base 64 VLQs specified by the source map format.
+     * Removes the mappings which don't change the original position resolved for any generated position: a mapping with the same source, original
+     * position and name as the one before it on the same generated line, or a mapping without source which doesn't end a mapping with a source.
+     */
+    public void minimizeMappings() {
+        minimizeMappings(false, false);
+    }
+
+    /**
+     * Removes the redundant mappings, as {@link #minimizeMappings()} does, after an optional coarsening of the mappings.
+     *
+     * @param aDropNames
+     *            Whether to remove the names of the mappings, and so the names of the source map. The names stay registered otherwise.
+     * @param aPerOriginalLine
+     *            Whether to keep only the first mapping of each run of mappings on the same generated line which have the same source and original
+     *            line, so that a generated position resolves to the start of its original line, statement level source maps being often enough for
+     *            stack traces.
      */
-    private String serializeMappings() {
-        int previousGeneratedColumn = 0;
-        int previousGeneratedLine = 1;
-        int previousOriginalColumn = 0;
-        int previousOriginalLine = 0;
-        int previousName = 0;
-        int previousSource = 0;
-        String result = "";
-        Mapping mapping;
-        int nameIdx;
-        int sourceIdx;
-
-        List<Mapping> mappings = this._mappings.toArray();
+    public void minimizeMappings(boolean aDropNames, boolean aPerOriginalLine) {
+        MappingList mappings = _sortedMappings();
+        MappingList minimized = new MappingList();
+        int lastLine = -1;
+        // the original position resolved before the mapping on its generated line, the source being -1 if none
+        int lastSource = -1;
+        int lastOriginalLine = 0;
+        int lastOriginalColumn = 0;
+        int lastName = -1;
         for (int i = 0, len = mappings.size(); i < len; i++) {
-            mapping = mappings.get(i);
-            if (mapping.generated.line != previousGeneratedLine) {
-                previousGeneratedColumn = 0;
-                while (mapping.generated.line != previousGeneratedLine) {
-                    result += ';';
-                    previousGeneratedLine++;
-                }
-            } else {
-                if (i > 0) {
-                    if (Util.compareByGeneratedPositionsInflated(mapping, mappings.get(i - 1)) == 0) {
-                        continue;
-                    }
-                    result += ',';
+            int generatedLine = mappings.generatedLine(i);
+            int source = mappings.source(i);
+            int originalLine = mappings.originalLine(i);
+            int originalColumn = mappings.originalColumn(i);
+            int name = aDropNames ? -1 : mappings.name(i);
+            if (generatedLine != lastLine) {
+                lastLine = generatedLine;
+                lastSource = -1;
+            }
+            if (source == -1) {
+                if (lastSource == -1) {
+                    continue;
                 }
+            } else if (source == lastSource && originalLine == lastOriginalLine
+                    && (aPerOriginalLine || (originalColumn == lastOriginalColumn && name == lastName))) {
+                continue;
             }
+            minimized.add(generatedLine, mappings.generatedColumn(i), source, originalLine, originalColumn, name);
+            lastSource = source;
+            lastOriginalLine = originalLine;
+            lastOriginalColumn = originalColumn;
+            lastName = name;
+        }
+        this._mappings = minimized;
+        if (this._lineCache != null) {
+            minimized.setLineListener(this._lineCache);
+            this._lineCache.invalidate();
+        }
+        if (aDropNames) {
+            this._names = new ArraySet<>();
+        }
+        this._rawMappings = null;
+    }
 
-            result += Base64VLQ.encode(mapping.generated.column - previousGeneratedColumn);
-            previousGeneratedColumn = mapping.generated.column;
+    /**
+     * Sets whether the serialized mappings are kept per generated line, so that serializing the mappings again, by toJSON or writeMappings, only
+     * encodes the generated lines which got new mappings since the last serialization, the other lines being copied. This suits a generator which
+     * is serialized again after each change of the generated file, as in a watch mode, at the cost of keeping the serialized mappings in memory.
+     */
+    public void setIncrementalSerialization(boolean aIncremental) {
+        this._lineCache = aIncremental ? new MappingsLineCache() : null;
+        this._mappings.setLineListener(this._lineCache);
+    }
 
-            if (mapping.source != null) {
-                sourceIdx = this._sources.indexOf(mapping.source);
-                result += Base64VLQ.encode(sourceIdx - previousSource);
-                previousSource = sourceIdx;
+    static int _intern(ArraySet<String> aSet, String aValue) {
+        if (aValue == null) {
+            return -1;
+        }
+        int index = aSet.indexOf(aValue);
+        if (index == -1) {
+            index = aSet.size();
+            aSet.add(aValue, false);
+        }
+        return index;
+    }
 
-                // lines are stored 0-based in SourceMap spec version 3
-                result += Base64VLQ.encode(mapping.original.line - 1 - previousOriginalLine);
-                previousOriginalLine = mapping.original.line - 1;
+    /**
+     * Serialize the accumulated mappings in to the stream of base 64 VLQs specified by the source map format.
+     */
+    String serializeMappings() {
+        if (this._rawMappings != null) {
+            return this._rawMappings;
+        }
+        if (this._lineCache != null) {
+            return this._lineCache.serialize(_sortedMappings());
+        }
+        MappingsEncoder encoder = new MappingsEncoder();
+        _serializeMappings(encoder);
+        return encoder.toString();
+    }
 
-                result += Base64VLQ.encode(mapping.original.column - previousOriginalColumn);
-                previousOriginalColumn = mapping.original.column;
+    /**
+     * Returns the accumulated mappings, sorted by generated position.
+     */
+    MappingList _sortedMappings() {
+        this._mappings.sort(this._sources.toArray(), this._names.toArray());
+        return this._mappings;
+    }
 
-                if (mapping.name != null) {
-                    nameIdx = this._names.indexOf(mapping.name);
-                    result += Base64VLQ.encode(nameIdx - previousName);
-                    previousName = nameIdx;
+    private void _serializeMappings(MappingsEncoder aEncoder) {
+        MappingList mappings = _sortedMappings();
+        _serializeMappings(mappings, aEncoder, 0, mappings.size());
+    }
+
+    static void _serializeMappings(MappingList aMappings, MappingsEncoder aEncoder, int aStart, int aEnd) {
+        for (int i = aStart; i < aEnd; i++) {
+            if (i > 0 && aMappings.generatedLine(i) == aMappings.generatedLine(i - 1)
+                    && aMappings.generatedColumn(i) == aMappings.generatedColumn(i - 1) && aMappings.source(i) == aMappings.source(i - 1)
+                    && aMappings.originalLine(i) == aMappings.originalLine(i - 1) && aMappings.originalColumn(i) == aMappings.originalColumn(i - 1)
+                    && aMappings.name(i) == aMappings.name(i - 1)) {
+                continue;
+            }
+            aEncoder.add(aMappings.generatedLine(i), aMappings.generatedColumn(i), aMappings.source(i), aMappings.originalLine(i),
+                    aMappings.originalColumn(i), aMappings.name(i));
+        }
+    }
+
+    /**
+     * Serialize the accumulated mappings by chunks encoded in parallel on the executor. The chunks start at a line boundary, and the state each
+     * chunk is encoded relatively to is computed by a first pass over the mappings, so the concatenated chunks are exactly the sequential
+     * serialization.
+     */
+    List<MappingsEncoder> _serializeMappings(Executor aExecutor, int aParallelism) {
+        if (aParallelism < 1) {
+            throw new RuntimeException("Parallelism must be at least 1, got " + aParallelism);
+        }
+        MappingList mappings = _sortedMappings();
+        int size = mappings.size();
+        int nbChunks = aExecutor == null ? 1 : Math.min(aParallelism * 4, size / MIN_CHUNK_SIZE);
+        if (nbChunks <= 1) {
+            MappingsEncoder encoder = new MappingsEncoder();
+            _serializeMappings(mappings, encoder, 0, size);
+            return Collections.singletonList(encoder);
+        }
+
+        // compute the state left by the mappings before each chunk
+        List<MappingsEncoder> encoders = new ArrayList<>();
+        List<int[]> bounds = _lineChunks(mappings, nbChunks);
+        int source = 0;
+        int originalLine = 0;
+        int originalColumn = 0;
+        int name = 0;
+        int i = 0;
+        for (int[] bound : bounds) {
+            int start = bound[0];
+            int end = bound[1];
+            MappingsEncoder encoder = new MappingsEncoder();
+            encoder.startAt(start == 0 ? 1 : mappings.generatedLine(start - 1), source, originalLine, originalColumn, name);
+            encoders.add(encoder);
+            for (; i < end; i++) {
+                if (mappings.source(i) != -1) {
+                    source = mappings.source(i);
+                    originalLine = mappings.originalLine(i) - 1;
+                    originalColumn = mappings.originalColumn(i);
+                    if (mappings.name(i) != -1) {
+                        name = mappings.name(i);
+                    }
                 }
             }
         }
 
-        return result;
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[encoders.size()];
+        for (int chunk = 0; chunk < tasks.length; chunk++) {
+            MappingsEncoder encoder = encoders.get(chunk);
+            int[] bound = bounds.get(chunk);
+            tasks[chunk] = CompletableFuture.runAsync(() -> _serializeMappings(mappings, encoder, bound[0], bound[1]), aExecutor);
+        }
+        _join(tasks);
+        return encoders;
+    }
+
+    /**
+     * Splits the sorted mappings in about the given number of chunks of consecutive mappings, as bounds {start, end}, a generated line never being
+     * split between two chunks.
+     */
+    private static List<int[]> _lineChunks(MappingList aMappings, int aNbChunks) {
+        List<int[]> bounds = new ArrayList<>();
+        int size = aMappings.size();
+        int start = 0;
+        for (int chunk = 1; chunk <= aNbChunks && start < size; chunk++) {
+            int end = chunk == aNbChunks ? size : Math.min(size, Math.max((int) ((long) size * chunk / aNbChunks), start + 1));
+            while (end < size && aMappings.generatedLine(end) == aMappings.generatedLine(end - 1)) {
+                end++;
+            }
+            bounds.add(new int[] { start, end });
+            start = end;
+        }
+        return bounds;
+    }
+
+    private static void _join(CompletableFuture<?>[] aTasks) {
+        try {
+            CompletableFuture.allOf(aTasks).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Write the accumulated mappings, serialized as the "mappings" value of the source map, to the given Appendable, typically a Writer or a
+     * StringBuilder. The mappings are written by chunks, so the whole string is never built in memory.
+     */
+    public void writeMappings(Appendable aOut) throws IOException {
+        if (this._rawMappings != null || this._lineCache != null) {
+            aOut.append(serializeMappings());
+            return;
+        }
+        MappingsEncoder encoder = new MappingsEncoder(aOut);
+        try {
+            _serializeMappings(encoder);
+            encoder.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write the accumulated mappings, serialized as the "mappings" value of the source map, to the given OutputStream. The "mappings" value being
+     * plain ASCII, the written bytes are valid in any ASCII compatible charset, like UTF-8.
+     */
+    public void writeMappings(OutputStream aOut) throws IOException {
+        if (this._rawMappings != null || this._lineCache != null) {
+            aOut.write(serializeMappings().getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        MappingsEncoder encoder = new MappingsEncoder(aOut);
+        try {
+            _serializeMappings(encoder);
+            encoder.flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write the accumulated mappings to the given Appendable, like {@link #writeMappings(Appendable)}, the mappings being serialized by chunks
+     * encoded in parallel on the executor before being written in order.
+     */
+    public void writeMappings(Appendable aOut, Executor aExecutor, int aParallelism) throws IOException {
+        if (this._rawMappings != null || this._lineCache != null) {
+            aOut.append(serializeMappings());
+            return;
+        }
+        for (MappingsEncoder chunk : _serializeMappings(aExecutor, aParallelism)) {
+            chunk.writeTo(aOut);
+        }
     }
 
     List<String> _generateSourcesContent(List<String> aSources, String aSourceRoot) {
-        return aSources.stream().map(source -> {
+        List<SourceContent> contents = _sourceContents(aSources, aSourceRoot);
+        List<String> sourcesContent = new ArrayList<>(contents.size());
+        for (SourceContent content : contents) {
+            sourcesContent.add(content != null ? content.read() : null);
+        }
+        return sourcesContent;
+    }
+
+    private List<SourceContent> _sourceContents(List<String> aSources, String aSourceRoot) {
+        List<SourceContent> contents = new ArrayList<>(aSources.size());
+        Function<String, String> relative = aSourceRoot != null ? Util.relativeTo(aSourceRoot) : null;
+        for (String source : aSources) {
             if (this._sourcesContents == null) {
-                return null;
+                contents.add(null);
+                continue;
             }
-            if (aSourceRoot != null) {
-                source = Util.relative(aSourceRoot, source);
+            if (relative != null) {
+                source = relative.apply(source);
             }
-            return this._sourcesContents.get(source);
-        }).collect(Collectors.toList());
+            contents.add(this._sourcesContents.get(source));
+        }
+        return contents;
     }
 
     /**
      * Externalize the source map.
      */
     public SourceMap toJSON() {
+        return _toJSON(serializeMappings());
+    }
+
+    /**
+     * Externalize the source map, the mappings being serialized by chunks encoded in parallel. The result is the same as {@link #toJSON()}.
+     *
+     * @param aExecutor
+     *            Optional. The executor on which the chunks are encoded. If null, the mappings are serialized sequentially by the calling thread.
+     * @param aParallelism
+     *            The number of threads expected to encode the chunks, the mappings being split in a few chunks per thread.
+     */
+    public SourceMap toJSON(Executor aExecutor, int aParallelism) {
+        if (this._rawMappings != null || this._lineCache != null) {
+            return _toJSON(serializeMappings());
+        }
+        List<MappingsEncoder> chunks = _serializeMappings(aExecutor, aParallelism);
+        int length = 0;
+        for (MappingsEncoder chunk : chunks) {
+            length += chunk.length();
+        }
+        char[] mappings = new char[length];
+        int offset = 0;
+        for (MappingsEncoder chunk : chunks) {
+            offset = chunk.copyTo(mappings, offset);
+        }
+        return _toJSON(new String(mappings));
+    }
+
+    /**
+     * Write the source map as JSON, encoded in UTF-8, to the given OutputStream. The mappings and the contents of the sources are encoded and
+     * escaped as they are written, so writing doesn't need more memory than a few buffers. The contents set from a file are read by chunks, while the
+     * ones from a supplier are written as supplied. The OutputStream is neither flushed nor closed.
+     */
+    public void writeJSON(OutputStream aOut) throws IOException {
+        // sorting the mappings may renumber the sources and names
+        _sortedMappings();
+        JsonWriter writer = new JsonWriter(aOut);
+        writer.raw("{\"version\":");
+        writer.raw(Integer.toString(this._version));
+        List<String> sources = this._sources.toArray();
+        writer.raw(",\"sources\":");
+        writer.strings(sources);
+        writer.raw(",\"names\":");
+        writer.strings(this._names.toArray());
+        writer.raw(",\"mappings\":\"");
+        writer.flush();
+        writeMappings(aOut);
+        writer.raw("\"");
+        if (this._file != null) {
+            writer.raw(",\"file\":");
+            writer.string(this._file);
+        }
+        if (this._sourceRoot != null) {
+            writer.raw(",\"sourceRoot\":");
+            writer.string(this._sourceRoot);
+        }
+        if (this._sourcesContents != null) {
+            writer.raw(",\"sourcesContent\":");
+            writer.raw("[");
+            List<SourceContent> contents = _sourceContents(sources, this._sourceRoot);
+            for (int i = 0; i < contents.size(); i++) {
+                if (i > 0) {
+                    writer.raw(",");
+                }
+                if (contents.get(i) != null) {
+                    contents.get(i).writeTo(writer);
+                } else {
+                    writer.raw("null");
+                }
+            }
+            writer.raw("]");
+        }
+        writer.raw("}");
+        writer.flush();
+    }
+
+    /**
+     * Write the source map as JSON, encoded in UTF-8, to the given channel, like {@link #writeJSON(OutputStream)}. The channel is not closed.
+     */
+    public void writeJSON(WritableByteChannel aChannel) throws IOException {
+        writeJSON(Channels.newOutputStream(aChannel));
+    }
+
+    private SourceMap _toJSON(String aMappings) {
         SourceMap map = new SourceMap();
         map.version = this._version;
         map.sources = this._sources.toArray();
         map.names = this._names.toArray();
-        map.mappings = serializeMappings();
+        map.mappings = aMappings;
         map.file = this._file;
         map.sourceRoot = this._sourceRoot;
         if (this._sourcesContents != null) {
@@ -0,0 +1,246 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Operations on whole source maps.
+ */
+public class SourceMaps {
+
+    private SourceMaps() {
+        // only static methods
+    }
+
+    /**
+     * Composes the source maps of the successive stages of a build into the source map of the whole build, as chaining applySourceMap would, but
+     * without building the source map between two stages: each mapping of the last stage is resolved through all the stages before it.
+     *
+     * @param aStages
+     *            The source maps of the stages, in the order the stages run: the first one maps the output of the first stage to the original sources,
+     *            and the last one maps the final output. The source map of each stage but the last must have a "file" property, which is the name the
+     *            next stage knows its output by. Mappings to other sources are kept as they are.
+     */
+    public static SourceMapGenerator compose(List<SourceMapConsumer> aStages) {
+        return compose(aStages, null, 1);
+    }
+
+    /**
+     * Composes the source maps of the successive stages of a build, like {@link #compose(List)}, the mappings being resolved by chunks of generated
+     * lines in parallel on the executor. The consumers of the stages are then queried from several threads.
+     *
+     * @param aExecutor
+     *            Optional. The executor on which the chunks are resolved. If null, the mappings are resolved by the calling thread.
+     * @param aParallelism
+     *            The number of threads expected to resolve the chunks, the mappings being split in a few chunks per thread.
+     */
+    public static SourceMapGenerator compose(List<SourceMapConsumer> aStages, Executor aExecutor, int aParallelism) {
+        if (aStages.isEmpty()) {
+            throw new RuntimeException("There must be at least one source map to compose.");
+        }
+        SourceMapGenerator generator = SourceMapGenerator.fromSourceMap(aStages.get(aStages.size() - 1));
+        List<SourceMapConsumer> upstreams = new ArrayList<>(aStages.subList(0, aStages.size() - 1));
+        Collections.reverse(upstreams);
+        generator._applySourceMaps(upstreams, aExecutor, aParallelism);
+        return generator;
+    }
+
+    /**
+     * Concatenates source maps into the source map of the concatenation of their generated files, without decoding them into mappings. Their
+     * "mappings" strings are spliced: a segment is copied as is, unless its values relative to the previous segment change in the concatenation, as
+     * the first segments of each source map do, in which case it alone is encoded again. The sources and names are merged, the same source or name in
+     * several source maps ending up once in the result, and the content of a source is the first one given by a source map.
+     *
+     * @param aFile
+     *            Optional. The filename of the concatenated generated file.
+     * @param aSections
+     *            The source maps to concatenate, each with the 0-based generated line and column at which its generated file starts, as the sections
+     *            of an indexed source map. Their offsets must be ordered, and a source map must not have mappings after the offset of the next one.
+     */
+    public static SourceMap concat(String aFile, List<Section> aSections) {
+        ArraySet<String> sources = new ArraySet<>();
+        List<String> sourcesContent = new ArrayList<>();
+        boolean hasSourcesContent = false;
+        ArraySet<String> names = new ArraySet<>();
+        StringBuilder mappings = new StringBuilder();
+        char[] segment = new char[5 * Base64VLQ.MAX_ENCODED_LENGTH];
+        int[] value = new int[1];
+        int[] deltas = new int[5];
+
+        // the state of the concatenated mappings, lines being 1-based and original lines 0-based
+        int generatedLine = 1;
+        int generatedColumn = 0;
+        boolean lineStarted = false;
+        int source = 0;
+        int originalLine = 0;
+        int originalColumn = 0;
+        int name = 0;
+        Position lastOffset = null;
+        for (Section section : aSections) {
+            SourceMap map = section.map;
+            if (map == null) {
+                throw new RuntimeException("The sections to concatenate must have a source map, sections with a url are not supported.");
+            }
+            if (map.sections != null) {
+                throw new RuntimeException("The source map of a section must not be an indexed source map.");
+            }
+            if (map.version != 3) {
+                throw new RuntimeException("Unsupported version: " + map.version);
+            }
+            int offsetLine = section.offset.line;
+            int offsetColumn = section.offset.column;
+            if (offsetLine < 0 || offsetColumn < 0) {
+                throw new RuntimeException("Section offsets must be positive, got " + offsetLine + ":" + offsetColumn);
+            }
+            if (lastOffset != null && (offsetLine < lastOffset.line || (offsetLine == lastOffset.line && offsetColumn < lastOffset.column))) {
+                throw new RuntimeException("Section offsets must be ordered and non-overlapping.");
+            }
+            lastOffset = section.offset;
+
+            // the ids of the sources and names of the section in the concatenation
+            int[] sourceIds = new int[map.sources.size()];
+            for (int i = 0; i < sourceIds.length; i++) {
+                String resolved = Util.normalize(map.sources.get(i));
+                if (map.sourceRoot != null) {
+                    resolved = Util.join(map.sourceRoot, resolved);
+                }
+                sourceIds[i] = SourceMapGenerator._intern(sources, resolved);
+                if (sourceIds[i] == sourcesContent.size()) {
+                    sourcesContent.add(null);
+                }
+                if (map.sourcesContent != null && i < map.sourcesContent.size() && map.sourcesContent.get(i) != null
+                        && sourcesContent.get(sourceIds[i]) == null) {
+                    sourcesContent.set(sourceIds[i], map.sourcesContent.get(i));
+                    hasSourcesContent = true;
+                }
+            }
+            int[] nameIds = new int[map.names == null ? 0 : map.names.size()];
+            for (int i = 0; i < nameIds.length; i++) {
+                nameIds[i] = SourceMapGenerator._intern(names, map.names.get(i));
+            }
+
+            // the state of the mappings of the section
+            String str = map.mappings;
+            int length = str.length();
+            int sectionLine = 0;
+            int sectionColumn = 0;
+            int sectionSource = 0;
+            int sectionOriginalLine = 0;
+            int sectionOriginalColumn = 0;
+            int sectionName = 0;
+            boolean firstSegment = true;
+            int index = 0;
+            while (index < length) {
+                char c = str.charAt(index);
+                if (c == ';') {
+                    sectionLine++;
+                    sectionColumn = 0;
+                    index++;
+                    continue;
+                }
+                if (c == ',') {
+                    index++;
+                    continue;
+                }
+                int start = index;
+                int nbValues = 0;
+                while (index < length && str.charAt(index) != ',' && str.charAt(index) != ';') {
+                    index = Base64VLQ.decode(str, index, value);
+                    if (nbValues < deltas.length) {
+                        deltas[nbValues] = value[0];
+                    }
+                    // the values after the name are ignored, as by the consumers
+                    nbValues++;
+                }
+                if (nbValues == 2) {
+                    throw new Error("Found a source, but no line and column");
+                }
+                if (nbValues == 3) {
+                    throw new Error("Found a source and line, but no column");
+                }
+
+                sectionColumn += deltas[0];
+                int line = offsetLine + sectionLine + 1;
+                int column = sectionLine == 0 ? offsetColumn + sectionColumn : sectionColumn;
+                if (firstSegment) {
+                    // the mappings of the previous section must not go past the first mapping of this one
+                    if (line < generatedLine || (line == generatedLine && lineStarted && column < generatedColumn)) {
+                        throw new RuntimeException("Section offsets must be ordered and non-overlapping.");
+                    }
+                    firstSegment = false;
+                }
+                while (generatedLine < line) {
+                    mappings.append(';');
+                    generatedLine++;
+                    generatedColumn = 0;
+                    lineStarted = false;
+                }
+                if (lineStarted) {
+                    mappings.append(',');
+                }
+                // the segment is copied as is if its values relative to the previous segment are unchanged
+                boolean unchanged = column - generatedColumn == deltas[0];
+                deltas[0] = column - generatedColumn;
+                generatedColumn = column;
+                lineStarted = true;
+                if (nbValues >= 4) {
+                    sectionSource += deltas[1];
+                    sectionOriginalLine += deltas[2];
+                    sectionOriginalColumn += deltas[3];
+                    int newSource = sourceIds[sectionSource];
+                    unchanged &= newSource - source == deltas[1] && sectionOriginalLine - originalLine == deltas[2]
+                            && sectionOriginalColumn - originalColumn == deltas[3];
+                    deltas[1] = newSource - source;
+                    deltas[2] = sectionOriginalLine - originalLine;
+                    deltas[3] = sectionOriginalColumn - originalColumn;
+                    source = newSource;
+                    originalLine = sectionOriginalLine;
+                    originalColumn = sectionOriginalColumn;
+                    if (nbValues >= 5) {
+                        sectionName += deltas[4];
+                        int newName = nameIds[sectionName];
+                        unchanged &= newName - name == deltas[4];
+                        deltas[4] = newName - name;
+                        name = newName;
+                    }
+                }
+                if (unchanged) {
+                    mappings.append(str, start, index);
+                } else {
+                    int segmentLength = 0;
+                    for (int i = 0; i < Math.min(nbValues, deltas.length); i++) {
+                        segmentLength = Base64VLQ.encode(deltas[i], segment, segmentLength);
+                    }
+                    mappings.append(segment, 0, segmentLength);
+                }
+            }
+        }
+
+        SourceMap map = new SourceMap();
+        map.version = 3;
+        map.file = aFile;
+        map.sources = sources.toArray();
+        map.names = names.toArray();
+        map.mappings = mappings.toString();
+        map.sourcesContent = hasSourcesContent ? sourcesContent : null;
+        return map;
+    }
+
+}
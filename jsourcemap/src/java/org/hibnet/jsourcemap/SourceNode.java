@@ -374,7 +374,8 @@ public class SourceNode {
         this.walk((chunk, original) -> {
             generatedCode.append(chunk);
             if (original.source != null && original.line != null && original.column != null) {
-                if (!original.source.equals(lastOriginalSource[0]) || lastOriginalLine[0] != original.line || lastOriginalColumn[0] != original.column
+                if (!original.source.equals(lastOriginalSource[0]) || !original.line.equals(lastOriginalLine[0])
+                        || !original.column.equals(lastOriginalColumn[0])
                         || (original.name == null ? lastOriginalName[0] != null : !original.name.equals(lastOriginalName[0]))) {
                     map.addMapping(new Mapping(new Position(generatedLine[0], generatedColumn[0]), new Position(original.line, original.column),
                             original.source, original.name));
@@ -0,0 +1,195 @@
+/*
+ *  Copyright 2015 JSourceMap contributors
+ * 
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.hibnet.jsourcemap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * A SourceMapGenerator which doesn't retain the added mappings: each mapping is encoded as soon as it is added, so the memory needed is the one of
+ * the encoded mappings, or none if they are written to an Appendable.
+ * <p>
+ * The mappings must be added in generated order, a mapping before the previously added one is rejected. Mappings at the same generated position are
+ * kept in the order they are added, and a mapping which is a repetition of the previous one is ignored. As the mappings are not retained,
+ * applySourceMap, applySourceMaps, minimizeMappings and setIncrementalSerialization are not supported.
+ */
+public class StreamingSourceMapGenerator extends SourceMapGenerator {
+
+    private MappingsEncoder _encoder;
+    private boolean _streamed;
+
+    private int _lastGeneratedLine = 0;
+    private int _lastGeneratedColumn = 0;
+    private int _lastSource = -1;
+    private int _lastOriginalLine = 0;
+    private int _lastOriginalColumn = 0;
+    private int _lastName = -1;
+
+    /**
+     * Creates a streaming generator which buffers the encoded mappings until toJSON.
+     */
+    public StreamingSourceMapGenerator(String file, String sourceRoot) {
+        super(file, sourceRoot);
+        this._encoder = new MappingsEncoder();
+        this._streamed = false;
+    }
+
+    /**
+     * Creates a streaming generator which writes the encoded mappings to the given Appendable, typically a Writer, as they are added. What is
+     * written is the value of the "mappings" field of the source map, without the quotes. The last mappings are written by {@link #flush()} or
+     * {@link #toJSON()}, and the source map returned by the latter has no mappings.
+     */
+    public StreamingSourceMapGenerator(String file, String sourceRoot, Appendable aMappingsOut) {
+        super(file, sourceRoot);
+        this._encoder = new MappingsEncoder(aMappingsOut);
+        this._streamed = true;
+    }
+
+    @Override
+    public void addMapping(Mapping aArgs) {
+        Position generated = aArgs.generated;
+        // a rejected mapping must not register its source and name
+        _checkOrder(generated.line, generated.column);
+        // the name is registered even without source, as SourceMapGenerator does
+        int name = aArgs.name != null ? _intern(this._names, aArgs.name) : -1;
+        if (aArgs.source != null) {
+            int source = _intern(this._sources, aArgs.source);
+            _add(generated.line, generated.column, source, aArgs.original.line, aArgs.original.column, name);
+        } else {
+            _add(generated.line, generated.column, -1, 0, 0, name);
+        }
+    }
+
+    @Override
+    public void addMappings(int[] aGeneratedLines, int[] aGeneratedColumns, int[] aSources, int[] aOriginalLines, int[] aOriginalColumns,
+            int[] aNames, int aOffset, int aLength) {
+        _checkIds(aSources, aNames, aOffset, aLength);
+        for (int i = aOffset; i < aOffset + aLength; i++) {
+            _checkOrder(aGeneratedLines[i], aGeneratedColumns[i]);
+            if (aSources[i] != -1) {
+                _add(aGeneratedLines[i], aGeneratedColumns[i], aSources[i], aOriginalLines[i], aOriginalColumns[i], aNames[i]);
+            } else {
+                _add(aGeneratedLines[i], aGeneratedColumns[i], -1, 0, 0, aNames[i]);
+            }
+        }
+    }
+
+    private void _checkOrder(int aGeneratedLine, int aGeneratedColumn) {
+        if (aGeneratedLine < this._lastGeneratedLine || (aGeneratedLine == this._lastGeneratedLine && aGeneratedColumn < this._lastGeneratedColumn)) {
+            throw new RuntimeException("Mappings must be added in generated order to a StreamingSourceMapGenerator: " + aGeneratedLine + ":"
+                    + aGeneratedColumn + " was added after " + this._lastGeneratedLine + ":" + this._lastGeneratedColumn);
+        }
+    }
+
+    private void _add(int aGeneratedLine, int aGeneratedColumn, int aSource, int aOriginalLine, int aOriginalColumn, int aName) {
+        if (aGeneratedLine == this._lastGeneratedLine && aGeneratedColumn == this._lastGeneratedColumn && aSource == this._lastSource
+                && aOriginalLine == this._lastOriginalLine && aOriginalColumn == this._lastOriginalColumn && aName == this._lastName) {
+            return;
+        }
+        this._lastGeneratedLine = aGeneratedLine;
+        this._lastGeneratedColumn = aGeneratedColumn;
+        this._lastSource = aSource;
+        this._lastOriginalLine = aOriginalLine;
+        this._lastOriginalColumn = aOriginalColumn;
+        this._lastName = aName;
+
+        this._encoder.add(aGeneratedLine, aGeneratedColumn, aSource, aOriginalLine, aOriginalColumn, aName);
+    }
+
+    /**
+     * Writes the pending encoded mappings to the Appendable given at construction, if any.
+     *
+     * @throws UncheckedIOException
+     *             if writing to the Appendable failed
+     */
+    public void flush() {
+        this._encoder.flush();
+    }
+
+    @Override
+    void applySourceMap(SourceMapConsumer aSourceMapConsumer, String aSourceFile, String aSourceMapPath) {
+        throw new RuntimeException("applySourceMap is not supported by a StreamingSourceMapGenerator as it does not retain the mappings.");
+    }
+
+    @Override
+    public void applySourceMaps(Function<String, SourceMapConsumer> aResolver, Function<String, String> aSourceMapPaths) {
+        throw new RuntimeException("applySourceMaps is not supported by a StreamingSourceMapGenerator as it does not retain the mappings.");
+    }
+
+    @Override
+    public void minimizeMappings(boolean aDropNames, boolean aPerOriginalLine) {
+        throw new RuntimeException("minimizeMappings is not supported by a StreamingSourceMapGenerator as it does not retain the mappings.");
+    }
+
+    @Override
+    public void setIncrementalSerialization(boolean aIncremental) {
+        throw new RuntimeException(
+                "setIncrementalSerialization is not supported by a StreamingSourceMapGenerator as it does not retain the mappings.");
+    }
+
+    @Override
+    String serializeMappings() {
+        if (this._streamed) {
+            this._encoder.flush();
+            return null;
+        }
+        return this._encoder.toString();
+    }
+
+    @Override
+    public void writeMappings(Appendable aOut) throws IOException {
+        _checkNotStreamed();
+        this._encoder.writeTo(aOut);
+    }
+
+    @Override
+    public void writeMappings(OutputStream aOut) throws IOException {
+        _checkNotStreamed();
+        this._encoder.writeTo(aOut);
+    }
+
+    @Override
+    public void writeJSON(OutputStream aOut) throws IOException {
+        _checkNotStreamed();
+        super.writeJSON(aOut);
+    }
+
+    /**
+     * The mappings being already encoded, this is the same as {@link #toJSON()}.
+     */
+    @Override
+    public SourceMap toJSON(Executor aExecutor, int aParallelism) {
+        return toJSON();
+    }
+
+    /**
+     * The mappings being already encoded, this is the same as {@link #writeMappings(Appendable)}.
+     */
+    @Override
+    public void writeMappings(Appendable aOut, Executor aExecutor, int aParallelism) throws IOException {
+        writeMappings(aOut);
+    }
+
+    private void _checkNotStreamed() {
+        if (this._streamed) {
+            throw new RuntimeException("The mappings of this StreamingSourceMapGenerator are already written as they are added.");
+        }
+    }
+
+}
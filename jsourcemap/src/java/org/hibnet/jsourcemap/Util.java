@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -216,6 +217,43 @@ class Util {
         return join(level + 1, "../") + aPath.substring(aRoot.length() + 1);
     }
 
+    /**
+     * Makes many paths relative to the same root, as relative(aRoot, aPath) would do, the root being split in its ancestors only once.
+     */
+    static final Function<String, String> relativeTo(String aRoot) {
+        if (aRoot.length() == 0) {
+            aRoot = ".";
+        }
+        aRoot = aRoot.replaceAll("/$", "");
+
+        List<String> prefixes = new ArrayList<>();
+        List<String> ups = new ArrayList<>();
+        int level = 0;
+        while (true) {
+            prefixes.add(aRoot + '/');
+            ups.add(join(level + 1, "../"));
+            int index = aRoot.lastIndexOf("/");
+            if (index < 0) {
+                break;
+            }
+            aRoot = aRoot.substring(0, index);
+            if (aRoot.matches("^([^/]+:/)?/*$")) {
+                break;
+            }
+            ++level;
+        }
+
+        return path -> {
+            for (int i = 0; i < prefixes.size(); i++) {
+                String prefix = prefixes.get(i);
+                if (path.startsWith(prefix)) {
+                    return ups.get(i) + path.substring(prefix.length());
+                }
+            }
+            return path;
+        };
+    }
+
     // mimic the behaviour of i1 - i2 in JS
     private static final int intcmp(Integer i1, Integer i2) {
         if (i1 == null && i2 == null) {